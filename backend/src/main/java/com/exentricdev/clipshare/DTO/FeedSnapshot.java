@@ -0,0 +1,16 @@
+package com.exentricdev.clipshare.DTO;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * An immutable ranking of videos, replaced as a whole whenever it is recomputed.
+ */
+public record FeedSnapshot(
+        List<VideoResponse> items,
+        Instant computedAt
+) {
+    public FeedSnapshot {
+        items = List.copyOf(items);
+    }
+}
@@ -1,4 +1,4 @@
 package com.exentricdev.clipshare.DTO;
 
-public record ProcessedVideo(String videoId, String outputPath) {
+public record ProcessedVideo(String videoId, String outputPath, String format, String artworkPath) {
 }
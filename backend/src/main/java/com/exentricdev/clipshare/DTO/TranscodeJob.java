@@ -1,8 +1,12 @@
 package com.exentricdev.clipshare.DTO;
 
+import java.time.Instant;
+
 public record TranscodeJob(
     String videoId,
     String inputPath,
-    String outputPath
+    String outputPath,
+    String uploaderId,
+    Instant publishedAt
 ) {
 }
@@ -0,0 +1,11 @@
+package com.exentricdev.clipshare.DTO;
+
+public record TranscodeProgress(
+        String videoId,
+        String uploaderId,
+        double percent,
+        double fps,
+        double speed,
+        long etaSeconds
+) {
+}
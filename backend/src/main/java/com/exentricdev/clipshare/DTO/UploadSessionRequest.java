@@ -0,0 +1,8 @@
+package com.exentricdev.clipshare.DTO;
+
+public record UploadSessionRequest(
+        String fileName,
+        String contentType,
+        long size
+) {
+}
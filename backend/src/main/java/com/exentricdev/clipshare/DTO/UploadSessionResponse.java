@@ -0,0 +1,8 @@
+package com.exentricdev.clipshare.DTO;
+
+public record UploadSessionResponse(
+        String id,
+        long offset,
+        long size
+) {
+}
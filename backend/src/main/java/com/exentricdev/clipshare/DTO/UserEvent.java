@@ -0,0 +1,9 @@
+package com.exentricdev.clipshare.DTO;
+
+public record UserEvent(
+        String id,
+        String userId,
+        String name,
+        Object payload
+) {
+}
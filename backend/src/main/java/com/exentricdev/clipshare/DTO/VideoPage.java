@@ -0,0 +1,9 @@
+package com.exentricdev.clipshare.DTO;
+
+import java.util.List;
+
+public record VideoPage(
+        List<VideoResponse> items,
+        String nextCursor
+) {
+}
@@ -1,9 +1,21 @@
 package com.exentricdev.clipshare.DTO;
 
+import com.exentricdev.clipshare.entity.Video;
+
+import java.time.Instant;
+
 public record VideoResponse(
         String id,
         String title,
         long size,
-        boolean isProcessed
+        boolean isProcessed,
+        String streamFormat,
+        Instant uploadedAt,
+        boolean hasArtwork,
+        long viewCount
 ) {
+    public static VideoResponse from(Video video) {
+        return new VideoResponse(video.getId(), video.getTitle(), video.getSize(), video.isProcessed(), video.getStreamFormat(), video.getUploadedAt(),
+                video.hasArtwork(), video.getViewCount());
+    }
 }
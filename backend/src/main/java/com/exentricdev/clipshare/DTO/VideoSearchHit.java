@@ -0,0 +1,10 @@
+package com.exentricdev.clipshare.DTO;
+
+/**
+ * A video matching a title search and its relevance, higher is better.
+ */
+public interface VideoSearchHit {
+    String getId();
+
+    double getScore();
+}
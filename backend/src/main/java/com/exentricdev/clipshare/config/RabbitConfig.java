@@ -1,6 +1,14 @@
 package com.exentricdev.clipshare.config;
 
+import com.exentricdev.clipshare.service.EmitterService;
+import com.exentricdev.clipshare.service.ProcessedListener;
+import com.exentricdev.clipshare.service.TranscodeScheduler;
+import com.exentricdev.clipshare.service.VideoCache;
 import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.boot.retry.RetryPolicySettings;
@@ -8,6 +16,7 @@ import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFacto
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.JacksonJsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.amqp.autoconfigure.RabbitTemplateCustomizer;
 import org.springframework.boot.amqp.autoconfigure.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
@@ -18,8 +27,18 @@ import java.time.Duration;
 
 @Configuration
 public class RabbitConfig {
+    @Bean
+    public Queue transcodeJobsQueue() {
+        return QueueBuilder.durable(TranscodeScheduler.QUEUE)
+                .maxPriority(TranscodeScheduler.MAX_PRIORITY)
+                .withArgument("x-dead-letter-exchange", "")
+                .withArgument("x-dead-letter-routing-key", "transcoder-failures")
+                .build();
+    }
+
     @Bean
     public Queue transcoderQueue() {
+        // FIFO queue used before jobs were prioritized, workers keep draining it
         return QueueBuilder.durable("video-transcoder")
                 .withArgument("x-dead-letter-exchange", "")
                 .withArgument("x-dead-letter-routing-key", "transcoder-failures")
@@ -31,11 +50,80 @@ public class RabbitConfig {
         return QueueBuilder.durable("transcoder-failures").build();
     }
 
+    @Bean
+    public Queue processedVideosFailuresQueue() {
+        return QueueBuilder.durable(ProcessedListener.FAILURES_QUEUE).build();
+    }
+
+    @Bean
+    public Queue videoProgressQueue() {
+        // Must match the declaration in the transcoder
+        return QueueBuilder.nonDurable("video-progress")
+                .ttl(30000)
+                .build();
+    }
+
+    @Bean
+    public FanoutExchange userEventsExchange() {
+        return new FanoutExchange(EmitterService.USER_EVENTS_EXCHANGE);
+    }
+
+    @Bean
+    public Queue userEventsQueue() {
+        // Every backend node gets its own exclusive, auto-deleted copy of the user events
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding userEventsBinding(Queue userEventsQueue, FanoutExchange userEventsExchange) {
+        return BindingBuilder.bind(userEventsQueue).to(userEventsExchange);
+    }
+
+    @Bean
+    public FanoutExchange videoInvalidationsExchange() {
+        return new FanoutExchange(VideoCache.INVALIDATIONS_EXCHANGE);
+    }
+
+    @Bean
+    public Queue videoInvalidationsQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding videoInvalidationsBinding(Queue videoInvalidationsQueue, FanoutExchange videoInvalidationsExchange) {
+        return BindingBuilder.bind(videoInvalidationsQueue).to(videoInvalidationsExchange);
+    }
+
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
             ConnectionFactory connectionFactory,
             SimpleRabbitListenerContainerFactoryConfigurer configurer,
             MessageConverter messageConverter) {
+        return retryingFactory(connectionFactory, configurer, messageConverter);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory processedVideosListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            MessageConverter messageConverter,
+            @Value("${app.processed.batch-size:50}") int batchSize,
+            @Value("${app.processed.batch-timeout:200ms}") Duration batchTimeout) {
+        SimpleRabbitListenerContainerFactory factory = retryingFactory(connectionFactory, configurer, messageConverter);
+
+        // Deliver up to batchSize messages at once, or whatever arrived within batchTimeout
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchTimeout.toMillis());
+        factory.setPrefetchCount(batchSize);
+        return factory;
+    }
+
+    private SimpleRabbitListenerContainerFactory retryingFactory(
+            ConnectionFactory connectionFactory,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            MessageConverter messageConverter) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         configurer.configure(factory, connectionFactory);
 
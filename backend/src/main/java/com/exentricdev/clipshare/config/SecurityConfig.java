@@ -19,8 +19,12 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.POST, "/api/videos/**").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/videos/my-videos").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/api/videos/uploads/**").authenticated()
                         .requestMatchers(HttpMethod.GET, "/api/videos/**").permitAll()
                         .requestMatchers("/test/send").permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+                        // Scraped by Prometheus on the internal network, not routed by the frontend proxy
+                        .requestMatchers("/actuator/prometheus").permitAll()
                         .anyRequest().authenticated()
                 )
                 .oauth2ResourceServer(oauth -> oauth.jwt(jwt -> {}));
@@ -0,0 +1,73 @@
+package com.exentricdev.clipshare.controller;
+
+import com.exentricdev.clipshare.DTO.UploadSessionRequest;
+import com.exentricdev.clipshare.DTO.UploadSessionResponse;
+import com.exentricdev.clipshare.DTO.VideoResponse;
+import com.exentricdev.clipshare.entity.UploadSession;
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/videos/uploads")
+public class UploadSessionController {
+    public UploadSessionService uploadSessionService;
+
+    public UploadSessionController(UploadSessionService uploadSessionService) {
+        this.uploadSessionService = uploadSessionService;
+    }
+
+    @PostMapping()
+    public UploadSessionResponse createSession(@AuthenticationPrincipal Jwt jwt, @RequestBody UploadSessionRequest request) {
+        String userId = jwt.getSubject();
+
+        UploadSession session = uploadSessionService.createSession(userId, request);
+        return new UploadSessionResponse(session.getId(), 0, session.getSize());
+    }
+
+    @GetMapping("/{id}")
+    public UploadSessionResponse getSession(@AuthenticationPrincipal Jwt jwt, @PathVariable String id) {
+        String userId = jwt.getSubject();
+
+        UploadSession session = uploadSessionService.getSession(id, userId);
+        return new UploadSessionResponse(session.getId(), uploadSessionService.getOffset(session), session.getSize());
+    }
+
+    @PutMapping("/{id}")
+    public UploadSessionResponse uploadChunk(@AuthenticationPrincipal Jwt jwt, @PathVariable String id,
+                                             @RequestParam("offset") long offset, HttpServletRequest request) throws IOException {
+        String userId = jwt.getSubject();
+
+        // Read the raw request body so nothing is buffered before it reaches the part file
+        UploadSession session = uploadSessionService.getSession(id, userId);
+        long newOffset = uploadSessionService.writeChunk(session, offset, request.getContentLengthLong(), request.getInputStream());
+
+        return new UploadSessionResponse(session.getId(), newOffset, session.getSize());
+    }
+
+    @PostMapping("/{id}/complete")
+    public VideoResponse completeSession(@AuthenticationPrincipal Jwt jwt, @PathVariable String id) {
+        String userId = jwt.getSubject();
+
+        UploadSession session = uploadSessionService.getSession(id, userId);
+        Video video = uploadSessionService.completeSession(session);
+
+        return VideoResponse.from(video);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancelSession(@AuthenticationPrincipal Jwt jwt, @PathVariable String id) {
+        String userId = jwt.getSubject();
+
+        UploadSession session = uploadSessionService.getSession(id, userId);
+        uploadSessionService.cancelSession(session);
+
+        return ResponseEntity.noContent().build();
+    }
+}
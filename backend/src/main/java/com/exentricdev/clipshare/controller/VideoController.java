@@ -1,12 +1,20 @@
 package com.exentricdev.clipshare.controller;
 
+import com.exentricdev.clipshare.DTO.FeedSnapshot;
+import com.exentricdev.clipshare.DTO.VideoPage;
 import com.exentricdev.clipshare.DTO.VideoPatch;
 import com.exentricdev.clipshare.DTO.VideoResponse;
 import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.exception.NotFoundException;
 import com.exentricdev.clipshare.service.EmitterService;
+import com.exentricdev.clipshare.service.TrendingFeed;
+import com.exentricdev.clipshare.service.VideoSearchService;
 import com.exentricdev.clipshare.service.VideoService;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.FileSystemResource;
+import com.exentricdev.clipshare.service.VideoStreamService;
+import com.exentricdev.clipshare.service.ViewCounter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,18 +25,26 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.nio.file.Path;
-import java.util.List;
+import java.io.IOException;
 
 @RestController
 @RequestMapping("/api/videos")
 public class VideoController {
     public VideoService videoService;
+    public VideoSearchService videoSearchService;
     public EmitterService emitterService;
+    public VideoStreamService videoStreamService;
+    public ViewCounter viewCounter;
+    public TrendingFeed trendingFeed;
 
-    public VideoController (VideoService videoService, EmitterService emitterService) {
+    public VideoController (VideoService videoService, VideoSearchService videoSearchService, EmitterService emitterService,
+                            VideoStreamService videoStreamService, ViewCounter viewCounter, TrendingFeed trendingFeed) {
         this.videoService = videoService;
+        this.videoSearchService = videoSearchService;
         this.emitterService = emitterService;
+        this.videoStreamService = videoStreamService;
+        this.viewCounter = viewCounter;
+        this.trendingFeed = trendingFeed;
     }
 
     @PostMapping()
@@ -40,7 +56,7 @@ public class VideoController {
         String userId = jwt.getSubject();
 
         Video video = videoService.uploadVideo(file, userId);
-        return new VideoResponse(video.getId(), video.getTitle(), video.getSize(), video.isProcessed());
+        return VideoResponse.from(video);
     }
 
     @DeleteMapping("/{id}")
@@ -60,56 +76,86 @@ public class VideoController {
         String userId = jwt.getSubject();
         Video updatedVideo = videoService.updateVideo(id, userId, updates);
 
-        VideoResponse response = new VideoResponse(updatedVideo.getId(), updatedVideo.getTitle(), updatedVideo.getSize(), updatedVideo.isProcessed());
+        VideoResponse response = VideoResponse.from(updatedVideo);
         return ResponseEntity.ok(response);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Resource> getVideoById(@PathVariable String id) {
+    public void getVideoById(@PathVariable String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
         Video video = videoService.getVideoById(id);
 
         if (!video.isProcessed()) {
-            return ResponseEntity.status(202).build();
+            response.setStatus(HttpStatus.ACCEPTED.value());
+            return;
         }
 
-        Path path = Path.of(video.getUrl());
-        long fileSize = video.getSize();
-        String contentType = video.getContentType();
+        if (video.isHls()) {
+            response.setStatus(HttpStatus.SEE_OTHER.value());
+            response.setHeader(HttpHeaders.LOCATION, request.getRequestURI() + "/hls/master.m3u8");
+            return;
+        }
+
+        viewCounter.recordPlayback(id, request);
+        videoStreamService.stream(video, request, response);
+    }
+
+    @GetMapping({"/{id}/hls/{file}", "/{id}/hls/{variant}/{file}"})
+    public void getHlsFile(@PathVariable String id, @PathVariable(required = false) String variant, @PathVariable String file,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Video video = videoService.getVideoById(id);
+
+        if (!video.isProcessed() || !video.isHls()) {
+            throw new NotFoundException("HLS stream for video with ID " + id + " not found.");
+        }
+
+        // Every HLS playback starts with the master playlist
+        if (variant == null && file.endsWith(".m3u8")) {
+            viewCounter.recordPlayback(id, request);
+        }
 
-        Resource videoResource = new FileSystemResource(path.toFile());
+        videoStreamService.streamHlsFile(video, variant, file, request, response);
+    }
 
-        return ResponseEntity.ok()
-                .contentLength(fileSize)
-                .header("Content-Type", contentType)
-                .body(videoResource);
+    @GetMapping("/{id}/artwork/{file}")
+    public void getArtwork(@PathVariable String id, @PathVariable String file,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Video video = videoService.getVideoById(id);
+        videoStreamService.streamArtwork(video, file, request, response);
     }
 
     @GetMapping()
-    public List<VideoResponse> getAllVideos() {
-        List<Video> videos = videoService.getAllVideos();
-        return videos.stream()
-                .map(video -> new VideoResponse(video.getId(), video.getTitle(), video.getSize(), video.isProcessed()))
-                .toList();
+    public VideoPage getAllVideos(@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit) {
+        return videoService.getAllVideos(cursor, limit);
+    }
+
+    @GetMapping("/search")
+    public VideoPage searchVideos(@RequestParam("q") String query, @RequestParam(required = false) String cursor,
+                                  @RequestParam(required = false) Integer limit) {
+        return videoSearchService.search(query, cursor, limit);
+    }
+
+    // Served from the last computed snapshot, without touching the database
+    @GetMapping("/trending")
+    public FeedSnapshot getTrendingVideos() {
+        return trendingFeed.getSnapshot();
     }
 
     @GetMapping("/my-videos")
-    public List<VideoResponse> getMyVideos(@AuthenticationPrincipal Jwt jwt) {
+    public VideoPage getMyVideos(@AuthenticationPrincipal Jwt jwt, @RequestParam(required = false) String cursor,
+                                 @RequestParam(required = false) Integer limit) {
         String userId = jwt.getSubject();
-        List<Video> videos = videoService.getVideosByUploader(userId);
-
-        return videos.stream()
-                .map(video -> new VideoResponse(video.getId(), video.getTitle(), video.getSize(), video.isProcessed()))
-                .toList();
+        return videoService.getVideosByUploader(userId, cursor, limit);
     }
 
     @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @ResponseBody
-    public SseEmitter subscribe(@AuthenticationPrincipal Jwt jwt) {
+    public SseEmitter subscribe(@AuthenticationPrincipal Jwt jwt,
+                                @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
         if (jwt == null) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
         }
 
         String userId = jwt.getSubject();
-        return emitterService.createEmitterForUser(userId);
+        return emitterService.createEmitterForUser(userId, lastEventId);
     }
 }
@@ -0,0 +1,79 @@
+package com.exentricdev.clipshare.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.time.Instant;
+
+/**
+ * Transcoded output of one piece of content, keyed by the SHA-256 of the uploaded bytes.
+ * Every video uploaded with the same content points at it, and its files are removed
+ * once the last of those videos is deleted.
+ */
+@Entity
+public class MediaAsset {
+    @Id
+    private String contentHash;
+
+    @Column(nullable = false)
+    private String url;
+
+    @Column(nullable = false)
+    private String streamFormat;
+
+    private String artworkPath;
+
+    @Column(nullable = false)
+    private Integer referenceCount;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    protected MediaAsset() {
+    }
+
+    public MediaAsset(String contentHash, String url, String streamFormat, String artworkPath, Instant createdAt) {
+        this.contentHash = contentHash;
+        this.url = url;
+        this.streamFormat = streamFormat;
+        this.artworkPath = artworkPath;
+        this.referenceCount = 1;
+        this.createdAt = createdAt;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getStreamFormat() {
+        return streamFormat;
+    }
+
+    public String getArtworkPath() {
+        return artworkPath;
+    }
+
+    public Integer getReferenceCount() {
+        return referenceCount;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void acquire() {
+        referenceCount++;
+    }
+
+    /**
+     * @return the number of references left
+     */
+    public int release() {
+        return --referenceCount;
+    }
+}
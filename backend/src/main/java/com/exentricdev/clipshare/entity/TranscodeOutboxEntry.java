@@ -0,0 +1,99 @@
+package com.exentricdev.clipshare.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * A transcode job waiting to be published to RabbitMQ. It is written in the transaction that
+ * registers the video, so a job exists if and only if the video was committed.
+ */
+@Entity
+@Table(name = "transcode_outbox")
+public class TranscodeOutboxEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String videoId;
+
+    @Column(nullable = false)
+    private String uploaderId;
+
+    @Column(nullable = false)
+    private String inputKey;
+
+    @Column(nullable = false)
+    private String outputKey;
+
+    @Column(nullable = false)
+    private Integer priority;
+
+    @Column(nullable = false)
+    private Instant uploadedAt;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    private Instant sentAt;
+
+    protected TranscodeOutboxEntry() {
+    }
+
+    public TranscodeOutboxEntry(String videoId, String uploaderId, String inputKey, String outputKey, int priority,
+                                Instant uploadedAt, Instant createdAt) {
+        this.videoId = videoId;
+        this.uploaderId = uploaderId;
+        this.inputKey = inputKey;
+        this.outputKey = outputKey;
+        this.priority = priority;
+        this.uploadedAt = uploadedAt;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getVideoId() {
+        return videoId;
+    }
+
+    public String getUploaderId() {
+        return uploaderId;
+    }
+
+    public String getInputKey() {
+        return inputKey;
+    }
+
+    public String getOutputKey() {
+        return outputKey;
+    }
+
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public Instant getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getSentAt() {
+        return sentAt;
+    }
+
+    public void markSent(Instant sentAt) {
+        this.sentAt = sentAt;
+    }
+}
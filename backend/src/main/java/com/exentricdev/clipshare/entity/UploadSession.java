@@ -0,0 +1,72 @@
+package com.exentricdev.clipshare.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.time.Instant;
+
+@Entity
+public class UploadSession {
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String uploaderId;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private String contentType;
+
+    @Column(nullable = false)
+    private String extension;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    protected UploadSession() {
+    }
+
+    public UploadSession(String id, String uploaderId, String fileName, String contentType, String extension, Long size, Instant createdAt) {
+        this.id = id;
+        this.uploaderId = uploaderId;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.extension = extension;
+        this.size = size;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUploaderId() {
+        return uploaderId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -3,11 +3,15 @@ package com.exentricdev.clipshare.entity;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import org.hibernate.annotations.Formula;
 
 import java.time.Instant;
 
 @Entity
 public class Video {
+    public static final String STREAM_FORMAT_MP4 = "mp4";
+    public static final String STREAM_FORMAT_HLS = "hls";
+
     @Id
     private String id;
 
@@ -34,6 +38,18 @@ public class Video {
     @Column(nullable = false)
     private Instant uploadedAt;
 
+    @Column(nullable = false)
+    private String streamFormat = STREAM_FORMAT_MP4;
+
+    private String artworkPath;
+
+    // SHA-256 of the uploaded bytes, null for videos uploaded before deduplication
+    private String contentHash;
+
+    // Flushed periodically by ViewCounter, so it lags the latest playbacks by up to a flush interval
+    @Formula("coalesce((select c.view_count from video_view_count c where c.video_id = id), 0)")
+    private long viewCount;
+
     protected Video() {
     }
 
@@ -84,6 +100,30 @@ public class Video {
         return uploadedAt;
     }
 
+    public String getStreamFormat() {
+        return streamFormat;
+    }
+
+    public boolean isHls() {
+        return STREAM_FORMAT_HLS.equals(streamFormat);
+    }
+
+    public String getArtworkPath() {
+        return artworkPath;
+    }
+
+    public boolean hasArtwork() {
+        return artworkPath != null;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public long getViewCount() {
+        return viewCount;
+    }
+
     public void setId(String id) {
         this.id = id;
     }
@@ -120,6 +160,18 @@ public class Video {
         this.uploadedAt = uploadedAt;
     }
 
+    public void setStreamFormat(String streamFormat) {
+        this.streamFormat = streamFormat;
+    }
+
+    public void setArtworkPath(String artworkPath) {
+        this.artworkPath = artworkPath;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     @Override
     public String toString() {
         return "Video{" +
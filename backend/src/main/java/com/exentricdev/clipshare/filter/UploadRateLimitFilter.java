@@ -1,9 +1,8 @@
 package com.exentricdev.clipshare.filter;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
+import com.exentricdev.clipshare.service.UploadRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -20,17 +19,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.time.Duration;
 
 @Component
 @Order(Ordered.HIGHEST_PRECEDENCE)
 public class UploadRateLimitFilter extends OncePerRequestFilter {
-    private final LoadingCache<String, Bucket> userBuckets = Caffeine.newBuilder()
-            .expireAfterAccess(Duration.ofMinutes(10))
-            .build(k -> newBucket());
-
     private static final Logger log = LoggerFactory.getLogger(UploadRateLimitFilter.class);
 
+    private final UploadRateLimiter uploadRateLimiter;
+    private final Counter rejections;
+
+    public UploadRateLimitFilter(UploadRateLimiter uploadRateLimiter, MeterRegistry meterRegistry) {
+        this.uploadRateLimiter = uploadRateLimiter;
+        this.rejections = Counter.builder("clipshare.upload.rate.limited")
+                .description("Upload requests rejected by the per-user rate limit")
+                .register(meterRegistry);
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         // Rate limit only upload requests
@@ -38,8 +42,9 @@ public class UploadRateLimitFilter extends OncePerRequestFilter {
             String requestURI = request.getRequestURI();
             HttpMethod method = HttpMethod.valueOf(request.getMethod());
 
-            // Only apply to POST /api/videos
-            if (!(requestURI.equals("/api/videos") && method == HttpMethod.POST)) {
+            // Only apply to POST /api/videos and upload session creation
+            boolean isUpload = requestURI.equals("/api/videos") || requestURI.equals("/api/videos/uploads");
+            if (!(isUpload && method == HttpMethod.POST)) {
                 filterChain.doFilter(request, response);
                 return;
             }
@@ -52,12 +57,12 @@ public class UploadRateLimitFilter extends OncePerRequestFilter {
             }
 
             String userId = authentication.getName();
-            Bucket bucket = userBuckets.get(userId);
 
-            if (bucket.tryConsume(1)) {
+            if (uploadRateLimiter.tryAcquire(userId)) {
                 log.info("Upload request allowed for user: {}", userId);
                 filterChain.doFilter(request, response);
             } else {
+                rejections.increment();
                 response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
                 response.getWriter().write("Rate limit exceeded. Please try again later.");
             }
@@ -66,11 +71,4 @@ public class UploadRateLimitFilter extends OncePerRequestFilter {
             response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
         }
     }
-
-    private Bucket newBucket() {
-        // Define your bucket configuration here
-        return Bucket.builder()
-                .addLimit(Bandwidth.simple(3, Duration.ofMinutes(1)))
-                .build();
-    }
 }
@@ -0,0 +1,17 @@
+package com.exentricdev.clipshare.repository;
+
+import com.exentricdev.clipshare.entity.MediaAsset;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Optional;
+
+public interface MediaAssetRepository extends JpaRepository<MediaAsset, String> {
+    // Row lock taken before changing the reference count, so an upload reusing an asset
+    // and the delete of its last other reference cannot interleave
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from MediaAsset a where a.contentHash = :contentHash")
+    Optional<MediaAsset> findForUpdate(String contentHash);
+}
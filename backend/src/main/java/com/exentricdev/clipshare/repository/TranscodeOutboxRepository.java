@@ -0,0 +1,26 @@
+package com.exentricdev.clipshare.repository;
+
+import com.exentricdev.clipshare.entity.TranscodeOutboxEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface TranscodeOutboxRepository extends JpaRepository<TranscodeOutboxEntry, Long> {
+    // Highest priority first once a level is added for every aging interval a job has waited.
+    // SKIP LOCKED lets every backend node relay at once without publishing a row twice
+    @Query(value = """
+            SELECT * FROM transcode_outbox
+            WHERE sent_at IS NULL
+            ORDER BY LEAST(:maxPriority, priority + FLOOR(EXTRACT(EPOCH FROM now() - created_at) / :agingSeconds)) DESC, id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<TranscodeOutboxEntry> lockPending(long agingSeconds, int maxPriority, int limit);
+
+    @Modifying
+    @Query("delete from TranscodeOutboxEntry e where e.sentAt < :before")
+    int deleteSentBefore(Instant before);
+}
@@ -0,0 +1,11 @@
+package com.exentricdev.clipshare.repository;
+
+import com.exentricdev.clipshare.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    List<UploadSession> findByCreatedAtBefore(Instant cutoff);
+}
@@ -0,0 +1,70 @@
+package com.exentricdev.clipshare.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Token buckets in the upload_rate_limit table. A bucket is refilled from the time elapsed
+ * since it was last touched, under its row lock, so every node sees the same balance.
+ */
+@Repository
+public class UploadTokenRepository {
+    private static final String CREATE = """
+            INSERT INTO upload_rate_limit (user_id, tokens, refilled_at)
+            VALUES (?, ?, now())
+            ON CONFLICT (user_id) DO NOTHING
+            """;
+
+    private static final String RESERVE = """
+            WITH bucket AS (
+                SELECT least(?, tokens + extract(epoch from now() - refilled_at) * ?) AS available
+                FROM upload_rate_limit
+                WHERE user_id = ?
+                FOR UPDATE
+            )
+            UPDATE upload_rate_limit
+            SET tokens = bucket.available - least(floor(bucket.available), ?),
+                refilled_at = now()
+            FROM bucket
+            WHERE user_id = ?
+            RETURNING CAST(least(floor(bucket.available), ?) AS INTEGER)
+            """;
+
+    private static final String RELEASE = "UPDATE upload_rate_limit SET tokens = least(?, tokens + ?) WHERE user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public UploadTokenRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Takes up to {@code max} whole tokens from the user's bucket, creating a full one if needed.
+     *
+     * @return the number of tokens taken, 0 if the bucket is empty
+     */
+    public int reserve(String userId, int capacity, double refillPerSecond, int max) {
+        Integer reserved = transactionTemplate.execute(status -> {
+            jdbcTemplate.update(CREATE, userId, capacity);
+            return jdbcTemplate.queryForObject(RESERVE, Integer.class, capacity, refillPerSecond, userId, max, userId, max);
+        });
+
+        return reserved == null ? 0 : reserved;
+    }
+
+    // Hands back tokens a node reserved but did not use
+    public void release(String userId, int capacity, int tokens) {
+        jdbcTemplate.update(RELEASE, capacity, tokens, userId);
+    }
+
+    // A bucket untouched for longer than it takes to refill is full, dropping it changes nothing
+    public int deleteIdleSince(Instant before) {
+        return jdbcTemplate.update("DELETE FROM upload_rate_limit WHERE refilled_at < ?", Timestamp.from(before));
+    }
+}
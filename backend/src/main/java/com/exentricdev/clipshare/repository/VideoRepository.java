@@ -1,11 +1,96 @@
 package com.exentricdev.clipshare.repository;
 
+import com.exentricdev.clipshare.DTO.VideoResponse;
+import com.exentricdev.clipshare.DTO.VideoSearchHit;
 import com.exentricdev.clipshare.entity.Video;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface VideoRepository extends JpaRepository<Video, String> {
-    List<Video> findByUploaderId(String uploaderId);
     long countByUploaderIdAndIsProcessed(String uploaderId, Boolean isProcessed);
+
+    @Query("""
+            select coalesce(sum(v.size), 0)
+            from Video v
+            where v.uploaderId = :uploaderId and v.uploadedAt >= :since and v.id <> :excludedId
+            """)
+    long sumSizeByUploaderIdSince(String uploaderId, Instant since, String excludedId);
+
+    // Listing queries select straight into VideoResponse so no managed entities are created,
+    // and page by (uploadedAt, id) so each page is an index range scan instead of an OFFSET
+
+    @Query("""
+            select new com.exentricdev.clipshare.DTO.VideoResponse(v.id, v.title, v.size, v.isProcessed, v.streamFormat, v.uploadedAt,
+                    case when v.artworkPath is not null then true else false end, v.viewCount)
+            from Video v
+            order by v.uploadedAt desc, v.id desc
+            """)
+    List<VideoResponse> findFirstPage(Limit limit);
+
+    @Query("""
+            select new com.exentricdev.clipshare.DTO.VideoResponse(v.id, v.title, v.size, v.isProcessed, v.streamFormat, v.uploadedAt,
+                    case when v.artworkPath is not null then true else false end, v.viewCount)
+            from Video v
+            where v.uploadedAt < :uploadedAt or (v.uploadedAt = :uploadedAt and v.id < :id)
+            order by v.uploadedAt desc, v.id desc
+            """)
+    List<VideoResponse> findPageAfter(Instant uploadedAt, String id, Limit limit);
+
+    @Query("""
+            select new com.exentricdev.clipshare.DTO.VideoResponse(v.id, v.title, v.size, v.isProcessed, v.streamFormat, v.uploadedAt,
+                    case when v.artworkPath is not null then true else false end, v.viewCount)
+            from Video v
+            where v.uploaderId = :uploaderId
+            order by v.uploadedAt desc, v.id desc
+            """)
+    List<VideoResponse> findFirstPageByUploaderId(String uploaderId, Limit limit);
+
+    @Query("""
+            select new com.exentricdev.clipshare.DTO.VideoResponse(v.id, v.title, v.size, v.isProcessed, v.streamFormat, v.uploadedAt,
+                    case when v.artworkPath is not null then true else false end, v.viewCount)
+            from Video v
+            where v.uploaderId = :uploaderId
+              and (v.uploadedAt < :uploadedAt or (v.uploadedAt = :uploadedAt and v.id < :id))
+            order by v.uploadedAt desc, v.id desc
+            """)
+    List<VideoResponse> findPageByUploaderIdAfter(String uploaderId, Instant uploadedAt, String id, Limit limit);
+
+    @Query("""
+            select new com.exentricdev.clipshare.DTO.VideoResponse(v.id, v.title, v.size, v.isProcessed, v.streamFormat, v.uploadedAt,
+                    case when v.artworkPath is not null then true else false end, v.viewCount)
+            from Video v
+            where v.id in :ids
+            """)
+    List<VideoResponse> findResponsesByIdIn(Collection<String> ids);
+
+    // Title search matches whole words through the tsvector index, and misspelled or partial words
+    // through the trigram index by how well the term matches the closest part of the title.
+    // Results are paged by (score, id), like the listings by (uploadedAt, id).
+
+    @Query(value = """
+            SELECT v.id AS id, CAST(ts_rank(v.title_search, q) + word_similarity(:term, v.title) AS DOUBLE PRECISION) AS score
+            FROM video v, websearch_to_tsquery('simple', :term) q
+            WHERE v.title_search @@ q OR :term <% v.title
+            ORDER BY score DESC, v.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<VideoSearchHit> searchFirstPage(String term, int limit);
+
+    @Query(value = """
+            SELECT hit.id AS id, hit.score AS score
+            FROM (
+                SELECT v.id, CAST(ts_rank(v.title_search, q) + word_similarity(:term, v.title) AS DOUBLE PRECISION) AS score
+                FROM video v, websearch_to_tsquery('simple', :term) q
+                WHERE v.title_search @@ q OR :term <% v.title
+            ) hit
+            WHERE hit.score < :score OR (hit.score = :score AND hit.id < :id)
+            ORDER BY hit.score DESC, hit.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<VideoSearchHit> searchPageAfter(String term, double score, String id, int limit);
 }
@@ -1,39 +1,216 @@
 package com.exentricdev.clipshare.service;
 
+import com.exentricdev.clipshare.DTO.UserEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Delivers server-sent events to every open connection of a user on every backend node.
+ * Events are published to a fanout exchange and each node pushes them to the emitters it
+ * holds locally. Each node also keeps a short per-user history so a client reconnecting
+ * with Last-Event-ID, possibly to another node, can catch up on what it missed.
+ */
 @Service
 public class EmitterService {
-    private final ConcurrentHashMap<String, SseEmitter> userEmitters = new ConcurrentHashMap<>();
+    public static final String USER_EVENTS_EXCHANGE = "user-events";
 
-    public SseEmitter createEmitterForUser(String userId) {
+    private static final Logger log = LoggerFactory.getLogger(EmitterService.class);
+
+    // Progress updates are superseded quickly, replaying them after a reconnect is pointless
+    private static final Set<String> TRANSIENT_EVENTS = Set.of("video-progress");
+
+    private final ConcurrentHashMap<String, Set<SseEmitter>> userEmitters = new ConcurrentHashMap<>();
+    private final RabbitTemplate rabbitTemplate;
+    private final Cache<String, Deque<UserEvent>> replayBuffers;
+    private final int replaySize;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong sequence = new AtomicLong();
+
+    public EmitterService(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+                          @Value("${app.events.replay-size:50}") int replaySize,
+                          @Value("${app.events.replay-ttl:10m}") Duration replayTtl,
+                          @Value("${app.events.replay-max-users:10000}") long replayMaxUsers) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.replaySize = replaySize;
+        this.replayBuffers = Caffeine.newBuilder()
+                .maximumSize(replayMaxUsers)
+                .expireAfterAccess(replayTtl)
+                .build();
+
+        Gauge.builder("clipshare.sse.connections", this, EmitterService::getConnectionCount)
+                .description("Server-sent event connections open on this node")
+                .register(meterRegistry);
+    }
+
+    public SseEmitter createEmitterForUser(String userId, String lastEventId) {
         SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
-        userEmitters.put(userId, emitter);
+        userEmitters.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(emitter);
+
+        emitter.onCompletion(() -> removeEmitter(userId, emitter));
+        emitter.onTimeout(() -> removeEmitter(userId, emitter));
+        emitter.onError((e) -> removeEmitter(userId, emitter));
 
-        emitter.onCompletion(() -> userEmitters.remove(userId));
-        emitter.onTimeout(() -> userEmitters.remove(userId));
-        emitter.onError((e) -> userEmitters.remove(userId));
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            for (UserEvent event : eventsAfter(userId, lastEventId)) {
+                if (!send(emitter, event)) {
+                    removeEmitter(userId, emitter);
+                    break;
+                }
+            }
+        }
 
         return emitter;
     }
 
-    public SseEmitter getEmitterForUser(String userId) {
-        return userEmitters.get(userId);
+    /**
+     * Publishes an event to all backend nodes, which deliver it to every open connection
+     * of the user. Falls back to local delivery if the broker is unavailable.
+     */
+    public void notifyUser(String userId, String eventName, Object payload) {
+        UserEvent event = new UserEvent(
+                System.currentTimeMillis() + "-" + nodeId + "-" + sequence.incrementAndGet(),
+                userId,
+                eventName,
+                payload
+        );
+
+        try {
+            rabbitTemplate.convertAndSend(USER_EVENTS_EXCHANGE, "", event);
+        } catch (AmqpException e) {
+            log.warn("Failed to fan out event {} for user {}, delivering locally only", eventName, userId, e);
+            deliverLocally(event);
+        }
     }
 
-    public void notifyUser(String userId, String eventName, Object payload) {
-        SseEmitter emitter = userEmitters.get(userId);
+    @RabbitListener(queues = "#{userEventsQueue.name}")
+    public void deliverLocally(UserEvent event) {
+        if (!TRANSIENT_EVENTS.contains(event.name())) {
+            Deque<UserEvent> buffer = replayBuffers.get(event.userId(), k -> new ArrayDeque<>());
+
+            synchronized (buffer) {
+                if (buffer.size() == replaySize) {
+                    buffer.removeFirst();
+                }
+
+                buffer.addLast(event);
+            }
+        }
 
-        if (emitter != null) {
-            try {
-                emitter.send(SseEmitter.event().name(eventName).data(payload, MediaType.APPLICATION_JSON));
-            } catch (Exception e) {
-                userEmitters.remove(userId);
+        Set<SseEmitter> emitters = userEmitters.get(event.userId());
+
+        if (emitters != null) {
+            for (SseEmitter emitter : emitters) {
+                if (!send(emitter, event)) {
+                    removeEmitter(event.userId(), emitter);
+                }
             }
         }
     }
+
+    @Scheduled(fixedDelayString = "${app.events.heartbeat-interval:PT15S}")
+    public void sendHeartbeats() {
+        userEmitters.forEach((userId, emitters) -> {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (Exception e) {
+                    removeEmitter(userId, emitter);
+                }
+            }
+        });
+    }
+
+    public int getConnectionCount() {
+        return userEmitters.values().stream().mapToInt(Set::size).sum();
+    }
+
+    List<UserEvent> eventsAfter(String userId, String lastEventId) {
+        Deque<UserEvent> buffer = replayBuffers.getIfPresent(userId);
+
+        if (buffer == null) {
+            return List.of();
+        }
+
+        List<UserEvent> events;
+        synchronized (buffer) {
+            events = new ArrayList<>(buffer);
+        }
+
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).id().equals(lastEventId)) {
+                return events.subList(i + 1, events.size());
+            }
+        }
+
+        // The last seen event has been evicted, or was sent by an older node that gave progress
+        // events ids, so only what was published after it is replayed
+        long lastTimestamp = timestamp(lastEventId);
+        return events.stream()
+                .filter(event -> timestamp(event.id()) > lastTimestamp)
+                .toList();
+    }
+
+    // Ids start with the publishing time, an id that does not parse is treated as older than any event
+    private static long timestamp(String eventId) {
+        try {
+            int separator = eventId.indexOf('-');
+            return Long.parseLong(separator < 0 ? eventId : eventId.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private boolean send(SseEmitter emitter, UserEvent event) {
+        try {
+            emitter.send(toSseEvent(event));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Transient events are sent without an id. They are never buffered, so a reconnect with
+     * their id could not be resumed from, and an event without an id leaves the client's last
+     * event id on the last buffered event it received.
+     */
+    static SseEmitter.SseEventBuilder toSseEvent(UserEvent event) {
+        SseEmitter.SseEventBuilder builder = SseEmitter.event();
+
+        if (!TRANSIENT_EVENTS.contains(event.name())) {
+            builder.id(event.id());
+        }
+
+        return builder.name(event.name()).data(event.payload(), MediaType.APPLICATION_JSON);
+    }
+
+    private void removeEmitter(String userId, SseEmitter emitter) {
+        userEmitters.computeIfPresent(userId, (k, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
 }
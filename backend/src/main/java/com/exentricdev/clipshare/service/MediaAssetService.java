@@ -0,0 +1,150 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.entity.MediaAsset;
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.repository.MediaAssetRepository;
+import com.exentricdev.clipshare.storage.VideoStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Shares transcoded output between videos with identical content and reference-counts it,
+ * so a re-uploaded clip skips the transcoder and its files outlive any single video.
+ * Callers must run inside a transaction, the asset row is locked while its count changes.
+ */
+@Service
+public class MediaAssetService {
+    private static final Logger log = LoggerFactory.getLogger(MediaAssetService.class);
+
+    private final MediaAssetRepository mediaAssetRepository;
+    private final VideoStorage videoStorage;
+
+    public MediaAssetService(MediaAssetRepository mediaAssetRepository, VideoStorage videoStorage) {
+        this.mediaAssetRepository = mediaAssetRepository;
+        this.videoStorage = videoStorage;
+    }
+
+    /**
+     * Points a freshly uploaded video at the existing asset for its content, if there is one.
+     *
+     * @return true if the video now shares an asset and does not need transcoding
+     */
+    public boolean attach(Video video) {
+        if (video.getContentHash() == null) {
+            return false;
+        }
+
+        Optional<MediaAsset> existing = mediaAssetRepository.findForUpdate(video.getContentHash());
+
+        existing.ifPresent(asset -> {
+            asset.acquire();
+            pointAt(video, asset);
+            log.info("Reusing media asset {} for videoId: {}", asset.getContentHash(), video.getId());
+        });
+
+        return existing.isPresent();
+    }
+
+    /**
+     * Records the output of a finished transcode as the asset for the video's content. If an
+     * identical upload finished transcoding first, the video joins that asset instead and its
+     * own output is removed.
+     */
+    public void register(Video video) {
+        if (video.getContentHash() == null) {
+            return;
+        }
+
+        Optional<MediaAsset> existing = mediaAssetRepository.findForUpdate(video.getContentHash());
+
+        if (existing.isEmpty()) {
+            mediaAssetRepository.save(new MediaAsset(
+                    video.getContentHash(),
+                    video.getUrl(),
+                    video.getStreamFormat(),
+                    video.getArtworkPath(),
+                    Instant.now()
+            ));
+            return;
+        }
+
+        MediaAsset asset = existing.get();
+
+        if (asset.getUrl().equals(video.getUrl())) {
+            return;
+        }
+
+        deleteFilesAfterCommit(video.getUrl(), video.isHls(), video.getArtworkPath());
+        asset.acquire();
+        pointAt(video, asset);
+    }
+
+    /**
+     * Drops the video's reference to its files and deletes them once nothing else uses them.
+     */
+    public void release(Video video) {
+        Optional<MediaAsset> existing = video.getContentHash() != null
+                ? mediaAssetRepository.findForUpdate(video.getContentHash())
+                : Optional.empty();
+
+        // Unprocessed videos do not hold a reference yet, their raw file is theirs alone
+        if (existing.isPresent() && existing.get().getUrl().equals(video.getUrl())) {
+            MediaAsset asset = existing.get();
+
+            if (asset.release() > 0) {
+                return;
+            }
+
+            mediaAssetRepository.delete(asset);
+        }
+
+        deleteFilesAfterCommit(video.getUrl(), video.isHls(), video.getArtworkPath());
+    }
+
+    private void pointAt(Video video, MediaAsset asset) {
+        video.setUrl(asset.getUrl());
+        video.setStreamFormat(asset.getStreamFormat());
+        video.setArtworkPath(asset.getArtworkPath());
+        video.setProcessed(true);
+    }
+
+    // Files are only removed once the rows no longer reference them
+    private void deleteFilesAfterCommit(String url, boolean hls, String artworkPath) {
+        Runnable delete = () -> deleteFiles(url, hls, artworkPath);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    delete.run();
+                }
+            });
+        } else {
+            delete.run();
+        }
+    }
+
+    private void deleteFiles(String url, boolean hls, String artworkPath) {
+        try {
+            // HLS videos are stored as a directory of playlists and segments
+            if (hls) {
+                videoStorage.deleteTree(VideoStorage.parentKey(url));
+            } else {
+                videoStorage.delete(url);
+            }
+
+            if (artworkPath != null) {
+                videoStorage.deleteTree(artworkPath);
+            }
+        } catch (IOException e) {
+            log.error("Failed to delete media files at {}", url, e);
+        }
+    }
+}
@@ -2,64 +2,262 @@ package com.exentricdev.clipshare.service;
 
 import com.exentricdev.clipshare.DTO.ProcessedVideo;
 import com.exentricdev.clipshare.DTO.VideoResponse;
+import com.exentricdev.clipshare.entity.Video;
 import com.exentricdev.clipshare.repository.VideoRepository;
+import com.exentricdev.clipshare.storage.VideoStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Marks videos as processed as the transcoder finishes them. Notifications are consumed in
+ * batches so a burst of finished transcodes costs one lookup and one batched update, and the
+ * raw file cleanup and user notification run on a separate executor once the batch has committed.
+ *
+ * <p>If a batch fails, its notifications are applied one at a time, so one bad notification
+ * does not hold back the rest. Notifications that fail on their own, or cannot be read, are
+ * parked in {@value #FAILURES_QUEUE} to be moved back once the cause is fixed. Transient
+ * failures such as a database outage are not parked; the batch is retried by the container.
+ */
 @Service
 public class ProcessedListener {
     private static final Logger log = LoggerFactory.getLogger(ProcessedListener.class);
 
+    public static final String FAILURES_QUEUE = "processed-videos-failures";
+
     private final VideoRepository videoRepository;
     private final EmitterService emitterService;
+    private final VideoCache videoCache;
+    private final MediaAssetService mediaAssetService;
+    private final VideoStorage videoStorage;
+    private final MessageConverter messageConverter;
+    private final RabbitTemplate rabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SimpleAsyncTaskExecutor sideEffectExecutor;
+    private final Timer handleTimer;
+    private final DistributionSummary batchSize;
+    private final Counter parked;
 
-    public ProcessedListener(VideoRepository videoRepository, EmitterService emitterService) {
+    public ProcessedListener(VideoRepository videoRepository, EmitterService emitterService, VideoCache videoCache,
+                             MediaAssetService mediaAssetService, VideoStorage videoStorage, MessageConverter messageConverter,
+                             RabbitTemplate rabbitTemplate, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
         this.videoRepository = videoRepository;
         this.emitterService = emitterService;
+        this.videoCache = videoCache;
+        this.mediaAssetService = mediaAssetService;
+        this.videoStorage = videoStorage;
+        this.messageConverter = messageConverter;
+        this.rabbitTemplate = rabbitTemplate;
+        this.transactionTemplate = transactionTemplate;
+
+        // Raw file cleanup and SSE fan-out are I/O bound, so each task gets a virtual thread
+        this.sideEffectExecutor = new SimpleAsyncTaskExecutor("processed-video-");
+        this.sideEffectExecutor.setVirtualThreads(true);
+
+        this.handleTimer = Timer.builder("clipshare.processed.handle")
+                .description("Time taken to apply a batch of processed video notifications")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("clipshare.processed.batch.size")
+                .description("Processed video notifications consumed per batch")
+                .register(meterRegistry);
+        this.parked = Counter.builder("clipshare.processed.parked")
+                .description("Processed video notifications that could not be applied and were parked")
+                .register(meterRegistry);
+    }
+
+    @RabbitListener(queues = "processed-videos", containerFactory = "processedVideosListenerContainerFactory")
+    public void handleProcessedVideos(List<Message> messages) {
+        batchSize.record(messages.size());
+        handleTimer.record(() -> handleBatch(messages));
     }
 
-    @RabbitListener(queues = "processed-videos")
-    public void handleProcessedVideo(ProcessedVideo processedVideo) {
-        String videoId = processedVideo.videoId();
-        String outputPath = processedVideo.outputPath();
+    private void handleBatch(List<Message> messages) {
+        List<Message> readable = new ArrayList<>(messages.size());
+        List<ProcessedVideo> processedVideos = new ArrayList<>(messages.size());
+        List<Runnable> toPark = new ArrayList<>();
 
-        log.info("Received processed video notification: videoId={}, outputPath={}", videoId, outputPath);
+        // Converted here rather than by the container, which would reject the whole batch
+        for (Message message : messages) {
+            try {
+                message.getMessageProperties().setInferredArgumentType(ProcessedVideo.class);
+                processedVideos.add((ProcessedVideo) messageConverter.fromMessage(message));
+                readable.add(message);
+            } catch (MessageConversionException | ClassCastException e) {
+                toPark.add(() -> park(message, "unreadable", e));
+            }
+        }
 
-        videoRepository.findById(videoId)
-                .map(video -> {
-                    String rawUrl = video.getUrl();
+        if (!processedVideos.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> applyProcessedVideos(processedVideos));
+            } catch (RuntimeException e) {
+                throwIfTransient(e);
+                log.warn("Failed to apply a batch of {} processed notifications, applying them one at a time", processedVideos.size(), e);
 
-                    video.setUrl(outputPath);
-                    video.setProcessed(true);
+                for (int i = 0; i < processedVideos.size(); i++) {
+                    ProcessedVideo processedVideo = processedVideos.get(i);
+                    Message message = readable.get(i);
 
-                    // Delete the original unprocessed file
                     try {
-                        Files.deleteIfExists(Path.of(rawUrl));
-                    } catch (IOException e) {
-                        log.error("Failed to delete original file for videoId: {}", videoId, e);
+                        transactionTemplate.executeWithoutResult(status -> applyProcessedVideos(List.of(processedVideo)));
+                    } catch (RuntimeException failure) {
+                        throwIfTransient(failure);
+                        toPark.add(() -> park(message, "videoId " + processedVideo.videoId(), failure));
                     }
+                }
+            }
+        }
+
+        // Only once nothing is left to retry, so a redelivered batch does not park a message twice
+        toPark.forEach(Runnable::run);
+    }
+
+    /**
+     * Rethrows failures that say nothing about the notification itself, such as a database
+     * outage, so the container retries the whole batch instead of parking every message in it.
+     * Notifications already applied are skipped as duplicates when the batch is redelivered.
+     */
+    private static void throwIfTransient(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof CannotCreateTransactionException
+                    || cause instanceof SQLTransientException
+                    || cause instanceof SQLRecoverableException) {
+                throw e;
+            }
+        }
+    }
+
+    private void park(Message message, String description, Exception cause) {
+        log.error("Failed to apply processed notification ({}), parking it in {}", description, FAILURES_QUEUE, cause);
+        rabbitTemplate.send("", FAILURES_QUEUE, message);
+        parked.increment();
+    }
+
+    private void applyProcessedVideos(List<ProcessedVideo> processedVideos) {
+        List<String> videoIds = processedVideos.stream().map(ProcessedVideo::videoId).distinct().toList();
+
+        // One IN query for the whole batch instead of a lookup per message
+        Map<String, Video> videos = videoRepository.findAllById(videoIds).stream()
+                .collect(Collectors.toMap(Video::getId, Function.identity()));
+
+        List<Video> updated = new ArrayList<>();
+        List<Runnable> afterCommit = new ArrayList<>();
+
+        for (ProcessedVideo processedVideo : processedVideos) {
+            String videoId = processedVideo.videoId();
+            log.info("Received processed video notification: videoId={}, outputPath={}", videoId, processedVideo.outputPath());
+
+            Video video = videos.get(videoId);
+
+            if (video == null) {
+                log.error("Video not found for videoId: {}", videoId);
+                continue;
+            }
+
+            // A redelivered notification would treat the processed output as the raw file
+            if (video.isProcessed()) {
+                log.info("Ignoring duplicate processed notification for videoId: {}", videoId);
+                continue;
+            }
+
+            String rawUrl = video.getUrl();
+            apply(video, processedVideo);
+            updated.add(video);
+
+            // Send notification to user about processing completion
+            VideoResponse payload = VideoResponse.from(video);
+            String uploaderId = video.getUploaderId();
+
+            afterCommit.add(() -> {
+                deleteRawFile(videoId, rawUrl);
+                emitterService.notifyUser(uploaderId, "video-processed", payload);
+            });
+        }
+
+        // Written as batched updates when the transaction flushes
+        videoRepository.saveAll(updated);
+
+        for (Video video : updated) {
+            videoCache.invalidate(video.getId());
+            log.info("Updated video as processed for videoId: {}", video.getId());
+        }
+
+        runAfterCommit(afterCommit);
+    }
+
+    private void apply(Video video, ProcessedVideo processedVideo) {
+        video.setUrl(processedVideo.outputPath());
+        video.setProcessed(true);
+
+        // Older workers do not send a format and always produce a single MP4
+        if (processedVideo.format() != null) {
+            video.setStreamFormat(processedVideo.format());
+        }
+
+        video.setArtworkPath(processedVideo.artworkPath());
+
+        // Joins an identical upload's output if that finished transcoding first
+        mediaAssetService.register(video);
+    }
+
+    // The raw file is only needed again if the batch rolls back, and users should not be told
+    // about a video before it is visible to them, so both wait for the commit
+    private void runAfterCommit(List<Runnable> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        Runnable dispatch = () -> tasks.forEach(sideEffectExecutor::execute);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch.run();
+                }
+            });
+        } else {
+            dispatch.run();
+        }
+    }
 
-                    // Send notification to user about processing completion
-                    VideoResponse payload = new VideoResponse(video.getId(), video.getTitle(), video.getSize(), video.isProcessed());
-
-                    emitterService.notifyUser(
-                            video.getUploaderId(),
-                            "video-processed",
-                            payload
-                    );
-
-                    return videoRepository.save(video);
-                })
-                .ifPresentOrElse(
-                        video -> log.info("Updated video as processed for videoId: {}", videoId),
-                        () -> log.error("Video not found for videoId: {}", videoId)
-                );
+    private void deleteRawFile(String videoId, String rawUrl) {
+        // Delete the original unprocessed file
+        try {
+            videoStorage.delete(rawUrl);
+        } catch (IOException e) {
+            log.error("Failed to delete original file for videoId: {}", videoId, e);
+        }
     }
 }
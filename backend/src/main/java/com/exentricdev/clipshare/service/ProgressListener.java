@@ -0,0 +1,41 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.TranscodeProgress;
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.repository.VideoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Service;
+
+@Service
+public class ProgressListener {
+    private static final Logger log = LoggerFactory.getLogger(ProgressListener.class);
+
+    private final VideoRepository videoRepository;
+    private final EmitterService emitterService;
+
+    public ProgressListener(VideoRepository videoRepository, EmitterService emitterService) {
+        this.videoRepository = videoRepository;
+        this.emitterService = emitterService;
+    }
+
+    @RabbitListener(queues = "video-progress")
+    public void handleProgress(TranscodeProgress progress) {
+        String uploaderId = progress.uploaderId();
+
+        // Jobs queued before the uploader was included in the message need a lookup
+        if (uploaderId == null) {
+            uploaderId = videoRepository.findById(progress.videoId())
+                    .map(Video::getUploaderId)
+                    .orElse(null);
+        }
+
+        if (uploaderId == null) {
+            log.debug("Dropping progress for unknown videoId: {}", progress.videoId());
+            return;
+        }
+
+        emitterService.notifyUser(uploaderId, "video-progress", progress);
+    }
+}
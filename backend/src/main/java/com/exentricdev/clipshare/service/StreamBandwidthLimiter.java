@@ -0,0 +1,181 @@
+package com.exentricdev.clipshare.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the bytes per second streamed to each client and by the node as a whole, so a few
+ * aggressive clients cannot saturate the uplink. Both limits are token buckets of bytes,
+ * consumed before every chunk written, and a limit of 0 turns it off.
+ *
+ * <p>Clients are told apart by user when the request carries credentials, otherwise by
+ * address. A throttled write parks the request thread until the buckets refill. Requests run
+ * on virtual threads, so a throttled connection does not hold a platform thread while it waits.
+ */
+@Service
+public class StreamBandwidthLimiter {
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private final long clientRate;
+    private final long globalRate;
+    private final Duration burst;
+    private final int chunkSize;
+
+    private final LoadingCache<String, Bucket> clientBuckets;
+    private final Bucket globalBucket;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter bytesSent;
+    private final Timer clientWait;
+    private final Timer globalWait;
+
+    public StreamBandwidthLimiter(MeterRegistry meterRegistry,
+                                  @Value("${app.stream.bandwidth.per-client:0}") DataSize clientRate,
+                                  @Value("${app.stream.bandwidth.global:0}") DataSize globalRate,
+                                  @Value("${app.stream.bandwidth.burst:2s}") Duration burst,
+                                  @Value("${app.stream.bandwidth.max-clients:100000}") long maxClients) {
+        this.clientRate = clientRate.toBytes();
+        this.globalRate = globalRate.toBytes();
+        this.burst = burst;
+
+        // A chunk must fit in a full bucket, or it could never be sent
+        long smallestCapacity = Math.min(
+                this.clientRate > 0 ? capacity(this.clientRate) : Long.MAX_VALUE,
+                this.globalRate > 0 ? capacity(this.globalRate) : Long.MAX_VALUE);
+        this.chunkSize = (int) Math.min(MAX_CHUNK_SIZE, smallestCapacity);
+
+        this.clientBuckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofMinutes(1).plus(burst))
+                .build(client -> newBucket(this.clientRate));
+        this.globalBucket = this.globalRate > 0 ? newBucket(this.globalRate) : null;
+
+        this.bytesSent = Counter.builder("clipshare.stream.bytes")
+                .description("Bytes streamed through the bandwidth limiter")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.clientWait = Timer.builder("clipshare.stream.throttle.wait")
+                .description("Time stream writes waited for bandwidth")
+                .tag("limit", "client")
+                .register(meterRegistry);
+        this.globalWait = Timer.builder("clipshare.stream.throttle.wait")
+                .description("Time stream writes waited for bandwidth")
+                .tag("limit", "global")
+                .register(meterRegistry);
+
+        Gauge.builder("clipshare.stream.throttled", waiting, AtomicInteger::get)
+                .description("Stream writes currently waiting for bandwidth")
+                .register(meterRegistry);
+
+        if (globalBucket != null) {
+            // 1 when the global burst is used up, above 1 when waiting writes have reserved future bandwidth
+            Gauge.builder("clipshare.stream.bandwidth.saturation", globalBucket,
+                            bucket -> 1 - bucket.getAvailableTokens() / (double) capacity(this.globalRate))
+                    .description("Share of the global streaming burst in use")
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return clientRate > 0 || globalRate > 0;
+    }
+
+    /**
+     * Wraps the response stream of a request so writes wait for the client's and the node's
+     * bandwidth. Returns the stream as is when no limit is configured.
+     */
+    public OutputStream throttle(OutputStream out, HttpServletRequest request) {
+        if (!isEnabled()) {
+            return out;
+        }
+
+        return new ThrottledOutputStream(out, clientRate > 0 ? clientKey(request) : null);
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "address:" + request.getRemoteAddr();
+    }
+
+    private long capacity(long rate) {
+        return Math.max(1, rate * burst.toMillis() / 1000);
+    }
+
+    private Bucket newBucket(long rate) {
+        return Bucket.builder()
+                .addLimit(Bandwidth.builder().capacity(capacity(rate)).refillGreedy(rate, Duration.ofSeconds(1)).build())
+                .build();
+    }
+
+    private void acquire(Bucket bucket, long bytes, Timer wait) throws IOException {
+        if (bucket == null || bucket.tryConsume(bytes)) {
+            return;
+        }
+
+        waiting.incrementAndGet();
+        long start = System.nanoTime();
+
+        try {
+            bucket.asBlocking().consume(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for stream bandwidth");
+        } finally {
+            wait.record(Duration.ofNanos(System.nanoTime() - start));
+            waiting.decrementAndGet();
+        }
+    }
+
+    private final class ThrottledOutputStream extends FilterOutputStream {
+        private final String clientKey;
+
+        ThrottledOutputStream(OutputStream out, String clientKey) {
+            super(out);
+            this.clientKey = clientKey;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunk = Math.min(len, chunkSize);
+
+                // Looked up per chunk, so a long stream keeps its client's bucket from expiring
+                // and the client's other requests share the same bucket
+                Bucket clientBucket = clientKey != null ? clientBuckets.get(clientKey) : null;
+
+                // The client's own limit first, so a throttled client does not hold global bandwidth
+                acquire(clientBucket, chunk, clientWait);
+                acquire(globalBucket, chunk, globalWait);
+
+                out.write(b, off, chunk);
+                bytesSent.increment(chunk);
+
+                off += chunk;
+                len -= chunk;
+            }
+        }
+    }
+}
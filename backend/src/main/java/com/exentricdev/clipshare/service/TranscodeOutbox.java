@@ -0,0 +1,49 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.entity.TranscodeOutboxEntry;
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.repository.TranscodeOutboxRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+
+/**
+ * Queues transcode jobs in the database instead of publishing them mid-transaction. A job is
+ * only published once its video is committed, and a slow broker never holds up the request.
+ */
+@Service
+public class TranscodeOutbox {
+    private final TranscodeOutboxRepository transcodeOutboxRepository;
+    private final TranscodeOutboxRelay transcodeOutboxRelay;
+
+    public TranscodeOutbox(TranscodeOutboxRepository transcodeOutboxRepository, TranscodeOutboxRelay transcodeOutboxRelay) {
+        this.transcodeOutboxRepository = transcodeOutboxRepository;
+        this.transcodeOutboxRelay = transcodeOutboxRelay;
+    }
+
+    public void enqueue(Video video, String inputKey, String outputKey, int priority) {
+        transcodeOutboxRepository.save(new TranscodeOutboxEntry(
+                video.getId(),
+                video.getUploaderId(),
+                inputKey,
+                outputKey,
+                priority,
+                video.getUploadedAt(),
+                Instant.now()
+        ));
+
+        // Publish right after the commit instead of waiting for the next poll
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    transcodeOutboxRelay.wakeUp();
+                }
+            });
+        } else {
+            transcodeOutboxRelay.wakeUp();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.TranscodeJob;
+import com.exentricdev.clipshare.entity.TranscodeOutboxEntry;
+import com.exentricdev.clipshare.repository.TranscodeOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes pending outbox rows in batches and marks them sent once the broker has confirmed
+ * them. Delivery is at least once: a row whose confirm is lost is published again, which the
+ * transcoder's output check and the processed listener already tolerate.
+ *
+ * <p>Only enough jobs to keep the workers busy are queued in the broker, where their priority
+ * can no longer change. The rest wait in the outbox and are published highest priority first,
+ * gaining a level for every aging interval they wait, so large jobs are not starved by a steady
+ * stream of small ones. Each node checks the queue depth on its own, so with several nodes the
+ * queue can briefly hold up to that many times the limit.
+ */
+@Component
+public class TranscodeOutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(TranscodeOutboxRelay.class);
+
+    private final TranscodeOutboxRepository transcodeOutboxRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UploadMetrics uploadMetrics;
+
+    private final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("transcode-outbox-");
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean rerun = new AtomicBoolean();
+
+    @Value("${app.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.outbox.confirm-timeout:5s}")
+    private Duration confirmTimeout;
+
+    @Value("${app.outbox.retention:7d}")
+    private Duration retention;
+
+    @Value("${app.transcode.aging-interval:10m}")
+    private Duration agingInterval;
+
+    // Jobs waiting in the broker queue before the rest are held back in the outbox, 0 for no limit
+    @Value("${app.transcode.max-queued:20}")
+    private int maxQueued;
+
+    public TranscodeOutboxRelay(TranscodeOutboxRepository transcodeOutboxRepository, RabbitTemplate rabbitTemplate,
+                                TransactionTemplate transactionTemplate, UploadMetrics uploadMetrics) {
+        this.transcodeOutboxRepository = transcodeOutboxRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.uploadMetrics = uploadMetrics;
+        this.executor.setVirtualThreads(true);
+    }
+
+    /**
+     * Relays pending rows in the background. Calls while a relay is running make it go
+     * around once more, so rows committed in the meantime are not left for the next poll.
+     */
+    public void wakeUp() {
+        rerun.set(true);
+
+        if (running.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    // Picks up rows left behind by a broker outage or by another node that went away
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval:PT5S}")
+    public void poll() {
+        wakeUp();
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.cleanup-interval:PT1H}")
+    public void deleteSent() {
+        Integer deleted = transactionTemplate.execute(status ->
+                transcodeOutboxRepository.deleteSentBefore(Instant.now().minus(retention)));
+
+        if (deleted != null && deleted > 0) {
+            log.info("Deleted {} sent transcode outbox rows", deleted);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (rerun.getAndSet(false)) {
+                Integer relayed;
+                do {
+                    relayed = transactionTemplate.execute(status -> relayBatch());
+                } while (relayed != null && relayed == batchSize);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to relay transcode jobs, retrying on the next poll", e);
+        } finally {
+            running.set(false);
+        }
+
+        // A wake-up that raced with the end of the loop would otherwise wait for the next poll
+        if (rerun.get() && running.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Publishes one batch of locked rows, then waits for all their confirms at once.
+     *
+     * @return the number of rows confirmed, a full batch means more may be pending
+     */
+    private int relayBatch() {
+        int limit = maxQueued > 0 ? (int) Math.min(batchSize, maxQueued - queuedJobs()) : batchSize;
+
+        if (limit <= 0) {
+            return 0;
+        }
+
+        List<TranscodeOutboxEntry> entries = transcodeOutboxRepository.lockPending(
+                Math.max(1, agingInterval.toSeconds()), TranscodeScheduler.MAX_PRIORITY, limit);
+        List<CorrelationData> confirms = new ArrayList<>(entries.size());
+        Instant now = Instant.now();
+
+        for (TranscodeOutboxEntry entry : entries) {
+            CorrelationData correlation = new CorrelationData(String.valueOf(entry.getId()));
+
+            try {
+                rabbitTemplate.convertAndSend("", TranscodeScheduler.QUEUE, new TranscodeJob(
+                        entry.getVideoId(),
+                        entry.getInputKey(),
+                        entry.getOutputKey(),
+                        entry.getUploaderId(),
+                        Instant.now()
+                ), message -> {
+                    message.getMessageProperties().setPriority(TranscodeScheduler.aged(entry.getPriority(),
+                            Duration.between(entry.getCreatedAt(), now), agingInterval));
+                    return message;
+                }, correlation);
+            } catch (AmqpException e) {
+                // The broker is unreachable, keep what was already sent and leave the rest pending
+                log.warn("Failed to publish transcode job for videoId: {}", entry.getVideoId(), e);
+                break;
+            }
+
+            confirms.add(correlation);
+        }
+
+        long confirmDeadline = System.nanoTime() + confirmTimeout.toNanos();
+        Instant sentAt = Instant.now();
+        int confirmed = 0;
+
+        for (int i = 0; i < confirms.size(); i++) {
+            TranscodeOutboxEntry entry = entries.get(i);
+
+            try {
+                CorrelationData.Confirm confirm = confirms.get(i).getFuture()
+                        .get(Math.max(0, confirmDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+                if (!confirm.ack()) {
+                    log.warn("Broker rejected transcode job for videoId: {} - {}", entry.getVideoId(), confirm.reason());
+                    continue;
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                log.warn("No confirm for transcode job of videoId: {}", entry.getVideoId());
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            entry.markSent(sentAt);
+            uploadMetrics.recordPublished(entry.getUploadedAt());
+            confirmed++;
+        }
+
+        return confirmed;
+    }
+
+    // Jobs ready for delivery, those already prefetched by a worker are not counted
+    private long queuedJobs() {
+        Long count = rabbitTemplate.execute(channel -> channel.messageCount(TranscodeScheduler.QUEUE));
+        return count != null ? count : 0;
+    }
+}
@@ -0,0 +1,78 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Picks the RabbitMQ priority of a transcode job. Smaller files are transcoded first, since
+ * short clips are the ones users sit and wait for, and uploaders who have queued a lot of
+ * work recently are pushed back so a single heavy uploader cannot crowd everyone else out.
+ * A job of any size still runs as soon as nothing with a higher priority is waiting. Jobs held
+ * back in the outbox gain a level for every aging interval they wait, so none of them starves.
+ */
+@Component
+public class TranscodeScheduler {
+    public static final String QUEUE = "transcode-jobs";
+
+    // RabbitMQ keeps a sub-queue per priority level, so the range is kept small
+    public static final int MAX_PRIORITY = 9;
+
+    // Number of fairness levels, an uploader drops one level each time their recent work doubles
+    static final int FAIRNESS_LEVELS = 4;
+
+    private final VideoRepository videoRepository;
+    private final long[] sizeTiers;
+    private final long fairShare;
+    private final Duration fairWindow;
+
+    public TranscodeScheduler(VideoRepository videoRepository,
+                              @Value("${app.transcode.size-tiers:20MB,100MB,300MB}") List<DataSize> sizeTiers,
+                              @Value("${app.transcode.fair-share:200MB}") DataSize fairShare,
+                              @Value("${app.transcode.fair-window:1h}") Duration fairWindow) {
+        this.videoRepository = videoRepository;
+        this.sizeTiers = sizeTiers.stream().mapToLong(DataSize::toBytes).sorted().toArray();
+        this.fairShare = fairShare.toBytes();
+        this.fairWindow = fairWindow;
+    }
+
+    public int priorityFor(Video video) {
+        long recentBytes = videoRepository.sumSizeByUploaderIdSince(
+                video.getUploaderId(),
+                Instant.now().minus(fairWindow),
+                video.getId()
+        );
+
+        return priority(video.getSize(), recentBytes, sizeTiers, fairShare);
+    }
+
+    // Matches the ordering of TranscodeOutboxRepository#lockPending
+    static int aged(int priority, Duration waited, Duration agingInterval) {
+        long levels = waited.isNegative() ? 0 : waited.toMillis() / Math.max(1, agingInterval.toMillis());
+        return (int) Math.min(MAX_PRIORITY, priority + levels);
+    }
+
+    /**
+     * @param recentBytes bytes the same uploader queued within the fairness window, excluding this job
+     */
+    static int priority(long sizeBytes, long recentBytes, long[] sizeTiers, long fairShare) {
+        // One point for every tier the job fits under
+        int sizeScore = 0;
+        for (long tier : sizeTiers) {
+            if (sizeBytes <= tier) {
+                sizeScore++;
+            }
+        }
+
+        int penalty = 63 - Long.numberOfLeadingZeros(1 + recentBytes / Math.max(1, fairShare));
+        int fairnessScore = FAIRNESS_LEVELS - 1 - Math.min(penalty, FAIRNESS_LEVELS - 1);
+
+        return Math.min(MAX_PRIORITY, sizeScore + fairnessScore);
+    }
+}
@@ -0,0 +1,158 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.FeedSnapshot;
+import com.exentricdev.clipshare.DTO.VideoResponse;
+import com.exentricdev.clipshare.repository.VideoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ranks videos by recent playbacks plus a boost for fresh uploads that fades with age, and
+ * serves the top of the ranking from an immutable snapshot, so reading the feed never touches
+ * the database. A background job keeps a scored candidate set in memory and only reads the
+ * view counts and uploads that changed since its previous run.
+ *
+ * <p>Playback activity is the recent_views column maintained by {@link ViewCounter}, which
+ * halves every {@code app.views.recent-half-life} without new views. Old videos nobody plays
+ * decay out of the candidate set.
+ */
+@Service
+public class TrendingFeed {
+    private static final Logger log = LoggerFactory.getLogger(TrendingFeed.class);
+
+    // Below this a candidate cannot reach the feed again without new views, and is forgotten
+    private static final double MIN_SCORE = 0.01;
+
+    private final VideoRepository videoRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Timer refreshDuration;
+    private final Map<String, Candidate> candidates = new HashMap<>();
+
+    private volatile FeedSnapshot snapshot = new FeedSnapshot(List.of(), Instant.EPOCH);
+    private Instant lastRefresh;
+
+    @Value("${app.feed.size:50}")
+    private int size;
+
+    @Value("${app.views.recent-half-life:24h}")
+    private Duration viewsHalfLife;
+
+    // A fresh upload counts as this many recent views, halving every upload half-life
+    @Value("${app.feed.upload-boost:5}")
+    private double uploadBoost;
+
+    @Value("${app.feed.upload-half-life:6h}")
+    private Duration uploadHalfLife;
+
+    // How far back the first refresh after startup looks, older activity has decayed to nothing
+    @Value("${app.feed.window:7d}")
+    private Duration window;
+
+    // Re-read margin for view counts and uploads committed while the previous refresh ran
+    @Value("${app.feed.overlap:1m}")
+    private Duration overlap;
+
+    public TrendingFeed(VideoRepository videoRepository, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.videoRepository = videoRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshDuration = Timer.builder("clipshare.feed.refresh")
+                .description("Time to recompute the trending feed")
+                .register(meterRegistry);
+    }
+
+    public FeedSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${app.feed.refresh-interval:PT1M}")
+    public void refresh() {
+        refreshDuration.record(() -> {
+            try {
+                recompute();
+            } catch (RuntimeException e) {
+                // The previous snapshot keeps being served
+                log.warn("Failed to refresh the trending feed", e);
+            }
+        });
+    }
+
+    private void recompute() {
+        Instant now = Instant.now();
+        Instant since = lastRefresh == null ? now.minus(window) : lastRefresh.minus(overlap);
+
+        jdbcTemplate.query("""
+                SELECT c.video_id, v.uploaded_at, c.recent_views, c.updated_at
+                FROM video_view_count c
+                JOIN video v ON v.id = c.video_id
+                WHERE c.updated_at > ?
+                """, row -> {
+            candidates.put(row.getString(1), new Candidate(
+                    row.getTimestamp(2).toInstant(),
+                    row.getDouble(3),
+                    row.getTimestamp(4).toInstant()
+            ));
+        }, Timestamp.from(since));
+
+        jdbcTemplate.query("SELECT id, uploaded_at FROM video WHERE uploaded_at > ?", row -> {
+            candidates.putIfAbsent(row.getString(1), new Candidate(row.getTimestamp(2).toInstant(), 0, now));
+        }, Timestamp.from(since));
+
+        Map<String, Double> scores = new HashMap<>();
+        candidates.forEach((videoId, candidate) -> scores.put(videoId, score(candidate, now)));
+        candidates.keySet().removeIf(videoId -> scores.get(videoId) < MIN_SCORE);
+
+        // Some of the best candidates may still be processing or already deleted, so take spares
+        List<String> ranked = candidates.keySet().stream()
+                .sorted(Comparator.comparing(scores::get, Comparator.reverseOrder()))
+                .limit(2L * size)
+                .toList();
+
+        Map<String, VideoResponse> videos = ranked.isEmpty()
+                ? Map.of()
+                : videoRepository.findResponsesByIdIn(ranked).stream()
+                        .collect(Collectors.toMap(VideoResponse::id, Function.identity()));
+
+        ranked.stream()
+                .filter(videoId -> !videos.containsKey(videoId))
+                .forEach(candidates::remove);
+
+        List<VideoResponse> items = ranked.stream()
+                .map(videos::get)
+                .filter(Objects::nonNull)
+                .filter(VideoResponse::isProcessed)
+                .limit(size)
+                .toList();
+
+        snapshot = new FeedSnapshot(items, now);
+        lastRefresh = now;
+    }
+
+    private record Candidate(Instant uploadedAt, double recentViews, Instant viewsAt) {
+    }
+
+    private double score(Candidate candidate, Instant now) {
+        return candidate.recentViews() * decay(candidate.viewsAt(), now, viewsHalfLife)
+                + uploadBoost * decay(candidate.uploadedAt(), now, uploadHalfLife);
+    }
+
+    private static double decay(Instant from, Instant to, Duration halfLife) {
+        return Math.pow(0.5, Math.max(0, Duration.between(from, to).toMillis()) / (double) halfLife.toMillis());
+    }
+}
@@ -0,0 +1,58 @@
+package com.exentricdev.clipshare.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the upload path, from bytes arriving on disk to the transcode job being queued.
+ * Transfers are tagged with the upload mode: "multipart" for a whole file spooled by the
+ * multipart resolver, "chunk" for a single chunk of a resumable upload session.
+ */
+@Component
+public class UploadMetrics {
+    private final Meter.MeterProvider<Timer> transferDuration;
+    private final Meter.MeterProvider<DistributionSummary> transferSize;
+    private final Meter.MeterProvider<DistributionSummary> transferThroughput;
+    private final Timer publishDelay;
+
+    public UploadMetrics(MeterRegistry meterRegistry) {
+        this.transferDuration = Timer.builder("clipshare.upload.duration")
+                .description("Time spent writing upload data to disk")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.transferSize = DistributionSummary.builder("clipshare.upload.size")
+                .description("Bytes written per upload transfer")
+                .baseUnit(BaseUnits.BYTES)
+                .withRegistry(meterRegistry);
+        this.transferThroughput = DistributionSummary.builder("clipshare.upload.throughput")
+                .description("Bytes per second of each upload transfer")
+                .baseUnit("bytes.per.second")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.publishDelay = Timer.builder("clipshare.upload.publish.delay")
+                .description("Time from a video being uploaded to its transcode job being published")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public void recordTransfer(String mode, long bytes, long elapsedNanos) {
+        transferDuration.withTags("mode", mode).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        transferSize.withTags("mode", mode).record(bytes);
+
+        if (elapsedNanos > 0) {
+            transferThroughput.withTags("mode", mode).record(bytes * 1e9 / elapsedNanos);
+        }
+    }
+
+    public void recordPublished(Instant uploadedAt) {
+        publishDelay.record(Duration.between(uploadedAt, Instant.now()));
+    }
+}
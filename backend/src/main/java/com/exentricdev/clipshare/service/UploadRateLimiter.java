@@ -0,0 +1,162 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.repository.UploadTokenRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-user upload limit shared by every backend node through Postgres. A node reserves a few
+ * tokens at a time and hands them out locally, so most uploads do not touch the database, and
+ * remembers an empty bucket until it can next refill, so rejected retries do not either.
+ * Tokens a node has not used within the reservation TTL are handed back for other nodes.
+ *
+ * <p>If the database cannot be reached, each node falls back to its own in-memory bucket with
+ * the same limit. The limit then holds per node rather than per cluster until it recovers.
+ */
+@Service
+public class UploadRateLimiter {
+    private static final Logger log = LoggerFactory.getLogger(UploadRateLimiter.class);
+
+    private final UploadTokenRepository uploadTokenRepository;
+    private final int capacity;
+    private final Duration period;
+    private final double refillPerSecond;
+    private final int reservationSize;
+    private final Duration reservationTtl;
+
+    private final LoadingCache<String, Reservation> reservations;
+    private final LoadingCache<String, Bucket> fallbackBuckets;
+    private final Counter fallbacks;
+
+    public UploadRateLimiter(UploadTokenRepository uploadTokenRepository, MeterRegistry meterRegistry,
+                             @Value("${app.upload.rate-limit.capacity:3}") int capacity,
+                             @Value("${app.upload.rate-limit.period:1m}") Duration period,
+                             @Value("${app.upload.rate-limit.reservation-size:2}") int reservationSize,
+                             @Value("${app.upload.rate-limit.reservation-ttl:10s}") Duration reservationTtl) {
+        this.uploadTokenRepository = uploadTokenRepository;
+        this.capacity = capacity;
+        this.period = period;
+        this.refillPerSecond = capacity / (double) period.toSeconds();
+        this.reservationSize = Math.min(reservationSize, capacity);
+        this.reservationTtl = reservationTtl;
+
+        // Reservations of users who stopped uploading expire promptly and give their tokens back.
+        // Handing them back is a database call, so it runs on a virtual thread.
+        this.reservations = Caffeine.newBuilder()
+                .expireAfterAccess(reservationTtl)
+                .scheduler(Scheduler.systemScheduler())
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .removalListener((String userId, Reservation reservation, RemovalCause cause) -> {
+                    if (userId != null && reservation != null) {
+                        release(userId, reservation.drain());
+                    }
+                })
+                .build(userId -> new Reservation());
+
+        this.fallbackBuckets = Caffeine.newBuilder()
+                .expireAfterAccess(period.multipliedBy(2))
+                .build(userId -> Bucket.builder()
+                        .addLimit(Bandwidth.builder().capacity(capacity).refillGreedy(capacity, period).build())
+                        .build());
+
+        this.fallbacks = Counter.builder("clipshare.upload.rate.fallback")
+                .description("Upload rate limit decisions made by a node-local bucket because the database was unavailable")
+                .register(meterRegistry);
+    }
+
+    public boolean tryAcquire(String userId) {
+        Reservation reservation = reservations.get(userId);
+        reservation.lock.lock();
+
+        try {
+            if (reservation.tokens > 0 && Instant.now().isBefore(reservation.expiresAt)) {
+                reservation.tokens--;
+                return true;
+            }
+
+            // The bucket was empty last time, and cannot have refilled a token yet
+            if (Instant.now().isBefore(reservation.emptyUntil)) {
+                return false;
+            }
+
+            // Leftovers of an expired reservation go back before a new one is taken
+            release(userId, reservation.drain());
+
+            int reserved = uploadTokenRepository.reserve(userId, capacity, refillPerSecond, reservationSize);
+            if (reserved == 0) {
+                reservation.emptyUntil = Instant.now().plusMillis((long) (1000 / refillPerSecond));
+                return false;
+            }
+
+            reservation.tokens = reserved - 1;
+            reservation.expiresAt = Instant.now().plus(reservationTtl);
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("Upload rate limit store unavailable, using the local limit for user: {}", userId, e);
+            fallbacks.increment();
+            return fallbackBuckets.get(userId).tryConsume(1);
+        } finally {
+            reservation.lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.rate-limit.cleanup-interval:PT1H}")
+    public void deleteIdleBuckets() {
+        try {
+            uploadTokenRepository.deleteIdleSince(Instant.now().minus(period.multipliedBy(2)));
+        } catch (DataAccessException e) {
+            log.warn("Failed to delete idle upload rate limit buckets", e);
+        }
+    }
+
+    private void release(String userId, int tokens) {
+        if (tokens == 0) {
+            return;
+        }
+
+        try {
+            uploadTokenRepository.release(userId, capacity, tokens);
+        } catch (DataAccessException e) {
+            // The tokens come back with the normal refill
+            log.warn("Failed to release {} upload tokens of user: {}", tokens, userId, e);
+        }
+    }
+
+    // Tokens this node reserved for a user, guarded by a lock per user so only that user's
+    // concurrent uploads wait while a new reservation is taken
+    private static final class Reservation {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int tokens;
+        private Instant expiresAt = Instant.EPOCH;
+        private Instant emptyUntil = Instant.EPOCH;
+
+        int drain() {
+            lock.lock();
+
+            try {
+                int drained = tokens;
+                tokens = 0;
+                return drained;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
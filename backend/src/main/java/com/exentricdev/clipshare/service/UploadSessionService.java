@@ -0,0 +1,282 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.UploadSessionRequest;
+import com.exentricdev.clipshare.entity.UploadSession;
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.exception.BadRequestException;
+import com.exentricdev.clipshare.exception.ConflictException;
+import com.exentricdev.clipshare.exception.ForbiddenException;
+import com.exentricdev.clipshare.exception.NotFoundException;
+import com.exentricdev.clipshare.repository.UploadSessionRepository;
+import com.exentricdev.clipshare.storage.VideoStorage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+@Service
+public class UploadSessionService {
+    private static final Logger log = LoggerFactory.getLogger(UploadSessionService.class);
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final VideoService videoService;
+    private final UploadMetrics uploadMetrics;
+    private final VideoStorage videoStorage;
+
+    // Running hash of each part file. A digest is only valid while it covers every byte written
+    // so far; chunks that land on another node, or a digest expiring, fall back to hashing on completion
+    private final Cache<String, PartDigest> partDigests = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofHours(1))
+            .maximumSize(10_000)
+            .build();
+
+    // Part files are appended to in place, so they stay on local disk whatever the storage
+    @Value("${app.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${app.upload.max-size:300MB}")
+    private DataSize maxUploadSize;
+
+    @Value("${app.upload.session-ttl:24h}")
+    private Duration sessionTtl;
+
+    public UploadSessionService(UploadSessionRepository uploadSessionRepository, VideoService videoService,
+                                UploadMetrics uploadMetrics, VideoStorage videoStorage) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.videoService = videoService;
+        this.uploadMetrics = uploadMetrics;
+        this.videoStorage = videoStorage;
+    }
+
+    public UploadSession createSession(String uploaderId, UploadSessionRequest request) {
+        if (request.size() <= 0) {
+            throw new BadRequestException("File is empty");
+        }
+
+        if (request.size() > maxUploadSize.toBytes()) {
+            throw new BadRequestException("File exceeds the maximum upload size of " + maxUploadSize.toMegabytes() + "MB.");
+        }
+
+        String extension = videoService.validateUpload(uploaderId, request.fileName(), request.contentType());
+        String id = UUID.randomUUID().toString().replace("-", "");
+
+        try {
+            Path partFile = getPartFile(id);
+            Files.createDirectories(partFile.getParent());
+            Files.createFile(partFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create upload session", e);
+        }
+
+        UploadSession session = new UploadSession(
+                id,
+                uploaderId,
+                request.fileName(),
+                request.contentType(),
+                extension,
+                request.size(),
+                Instant.now()
+        );
+
+        return uploadSessionRepository.save(session);
+    }
+
+    public UploadSession getSession(String sessionId, String requesterId) {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new NotFoundException("Upload session with ID " + sessionId + " not found."));
+
+        if (!session.getUploaderId().equals(requesterId)) {
+            throw new ForbiddenException("You are not authorized to access this upload session.");
+        }
+
+        return session;
+    }
+
+    /**
+     * The part file on disk is the source of truth for the offset, so writing a chunk
+     * never needs a database round trip.
+     */
+    public long getOffset(UploadSession session) {
+        try {
+            return Files.size(getPartFile(session.getId()));
+        } catch (IOException e) {
+            throw new NotFoundException("Upload data for session " + session.getId() + " not found.");
+        }
+    }
+
+    /**
+     * Streams a chunk from the request body straight into the part file at the given offset.
+     *
+     * @param contentLength the declared chunk length, or -1 if unknown
+     * @return the new upload offset
+     */
+    public long writeChunk(UploadSession session, long offset, long contentLength, InputStream body) throws IOException {
+        Path partFile = getPartFile(session.getId());
+
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(channel)) {
+            if (lock == null) {
+                throw new ConflictException("Another chunk is being written to this upload.");
+            }
+
+            long currentOffset = channel.size();
+
+            if (offset != currentOffset) {
+                throw new ConflictException("Upload offset mismatch, expected " + currentOffset + ".");
+            }
+
+            long remaining = session.getSize() - currentOffset;
+
+            if (contentLength > remaining) {
+                throw new BadRequestException("Chunk exceeds the declared upload size.");
+            }
+
+            long limit = contentLength >= 0 ? contentLength : remaining;
+
+            // Taken out of the cache while writing, it is only put back if the chunk is written in full
+            PartDigest partDigest = partDigests.asMap().remove(session.getId());
+            if (partDigest == null && currentOffset == 0) {
+                partDigest = new PartDigest(ContentHash.newDigest());
+            } else if (partDigest != null && partDigest.length != currentOffset) {
+                partDigest = null;
+            }
+
+            ReadableByteChannel source = Channels.newChannel(partDigest != null ? new DigestInputStream(body, partDigest.digest) : body);
+
+            long startedAt = System.nanoTime();
+            long written = 0;
+            while (written < limit) {
+                long transferred = channel.transferFrom(source, currentOffset + written, limit - written);
+
+                if (transferred <= 0) {
+                    break;
+                }
+
+                written += transferred;
+            }
+
+            if (contentLength < 0 && written == remaining && body.read() != -1) {
+                throw new BadRequestException("Chunk exceeds the declared upload size.");
+            }
+
+            // The body is read straight off the connection, so this is the client's upload speed
+            uploadMetrics.recordTransfer("chunk", written, System.nanoTime() - startedAt);
+
+            if (partDigest != null) {
+                partDigest.length = currentOffset + written;
+                partDigests.put(session.getId(), partDigest);
+            }
+
+            return currentOffset + written;
+        }
+    }
+
+    public Video completeSession(UploadSession session) {
+        long offset = getOffset(session);
+
+        if (offset != session.getSize()) {
+            throw new BadRequestException("Upload is incomplete, received " + offset + " of " + session.getSize() + " bytes.");
+        }
+
+        // Re-check before moving the file so a rejected upload keeps its data
+        videoService.validateUpload(session.getUploaderId(), session.getFileName(), session.getContentType());
+
+        String contentHash;
+
+        try {
+            contentHash = contentHash(session);
+            videoStorage.moveIn(VideoService.rawKey(session.getId() + session.getExtension()), getPartFile(session.getId()));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to finalize upload", e);
+        }
+
+        Video video = videoService.registerUploadedVideo(
+                session.getId(),
+                session.getUploaderId(),
+                session.getFileName(),
+                session.getContentType(),
+                session.getSize(),
+                contentHash
+        );
+
+        uploadSessionRepository.delete(session);
+        return video;
+    }
+
+    public void cancelSession(UploadSession session) {
+        deleteSession(session);
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.session-cleanup-interval:PT1H}")
+    public void purgeExpiredSessions() {
+        for (UploadSession session : uploadSessionRepository.findByCreatedAtBefore(Instant.now().minus(sessionTtl))) {
+            log.info("Removing expired upload session: {}", session.getId());
+            deleteSession(session);
+        }
+    }
+
+    private String contentHash(UploadSession session) throws IOException {
+        PartDigest partDigest = partDigests.asMap().remove(session.getId());
+
+        if (partDigest != null && partDigest.length == session.getSize()) {
+            return ContentHash.toHex(partDigest.digest);
+        }
+
+        return ContentHash.of(getPartFile(session.getId()));
+    }
+
+    private void deleteSession(UploadSession session) {
+        partDigests.invalidate(session.getId());
+
+        try {
+            Files.deleteIfExists(getPartFile(session.getId()));
+        } catch (IOException e) {
+            log.error("Failed to delete part file for upload session: {}", session.getId(), e);
+        }
+
+        uploadSessionRepository.delete(session);
+    }
+
+    private Path getPartFile(String sessionId) {
+        return Path.of(uploadDir).toAbsolutePath().normalize().resolve("raw").resolve(sessionId + ".part");
+    }
+
+    // Another process holding the lock yields null, another thread of this JVM throws instead
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static final class PartDigest {
+        private final MessageDigest digest;
+        // Number of bytes of the part file fed into the digest
+        private long length;
+
+        private PartDigest(MessageDigest digest) {
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.repository.VideoRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through cache of video records for the streaming endpoints, which look a video up on
+ * every request a player makes. Changes are invalidated on every backend node through a
+ * fanout exchange; the time-based expiry bounds staleness if an invalidation is lost.
+ * Cached search results are only dropped for changes that move a video in or out of them,
+ * i.e. a new title or a deletion. Other changes show in searches once their short TTL expires.
+ */
+@Service
+public class VideoCache {
+    public static final String INVALIDATIONS_EXCHANGE = "video-invalidations";
+
+    // Whether an invalidation also drops cached search results, absent in older nodes' messages
+    private static final String AFFECTS_SEARCH_HEADER = "x-affects-search";
+
+    private static final Logger log = LoggerFactory.getLogger(VideoCache.class);
+
+    private final VideoRepository videoRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final VideoSearchService videoSearchService;
+    private final Cache<String, Video> videos;
+
+    public VideoCache(VideoRepository videoRepository, RabbitTemplate rabbitTemplate, VideoSearchService videoSearchService,
+                      MeterRegistry meterRegistry,
+                      @Value("${app.videos.cache.max-size:10000}") long maxSize,
+                      @Value("${app.videos.cache.ttl:5m}") Duration ttl) {
+        this.videoRepository = videoRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.videoSearchService = videoSearchService;
+        this.videos = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, videos, "videos");
+    }
+
+    public Optional<Video> get(String videoId) {
+        // Missing videos are not cached, the loader returning null leaves no entry behind
+        return Optional.ofNullable(videos.get(videoId, id -> videoRepository.findById(id).orElse(null)));
+    }
+
+    public void invalidate(String videoId) {
+        invalidate(videoId, false);
+    }
+
+    /**
+     * Evicts a video on every node once the surrounding transaction, if any, has committed,
+     * so a concurrent read cannot put the old row back into the cache.
+     *
+     * @param affectsSearch whether the change can alter which searches match the video
+     */
+    public void invalidate(String videoId, boolean affectsSearch) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishInvalidation(videoId, affectsSearch);
+                }
+            });
+        } else {
+            publishInvalidation(videoId, affectsSearch);
+        }
+    }
+
+    @RabbitListener(queues = "#{videoInvalidationsQueue.name}")
+    public void handleInvalidation(String videoId, @Header(name = AFFECTS_SEARCH_HEADER, required = false) Boolean affectsSearch) {
+        evict(videoId, affectsSearch == null || affectsSearch);
+    }
+
+    private void evict(String videoId, boolean affectsSearch) {
+        videos.invalidate(videoId);
+
+        if (affectsSearch) {
+            videoSearchService.invalidateAll();
+        }
+    }
+
+    private void publishInvalidation(String videoId, boolean affectsSearch) {
+        evict(videoId, affectsSearch);
+
+        try {
+            rabbitTemplate.convertAndSend(INVALIDATIONS_EXCHANGE, "", videoId, message -> {
+                message.getMessageProperties().setHeader(AFFECTS_SEARCH_HEADER, affectsSearch);
+                return message;
+            });
+        } catch (AmqpException e) {
+            log.warn("Failed to broadcast cache invalidation for videoId: {}", videoId, e);
+        }
+    }
+}
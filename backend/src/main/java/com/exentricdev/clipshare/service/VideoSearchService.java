@@ -0,0 +1,142 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.VideoPage;
+import com.exentricdev.clipshare.DTO.VideoResponse;
+import com.exentricdev.clipshare.DTO.VideoSearchHit;
+import com.exentricdev.clipshare.exception.BadRequestException;
+import com.exentricdev.clipshare.repository.VideoRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ranked title search over the indexed title_search and trigram columns. First pages of
+ * popular queries are cached briefly. {@link VideoCache} clears the cache when a video's title
+ * changes or it is deleted, as that can move it in or out of any query's results. Other changes,
+ * such as a finished transcode, show once the short TTL expires.
+ */
+@Service
+public class VideoSearchService {
+    private static final int MAX_QUERY_LENGTH = 100;
+
+    private final VideoRepository videoRepository;
+    private final Cache<String, VideoPage> firstPages;
+
+    @Value("${app.videos.page-size:24}")
+    private int defaultPageSize;
+
+    @Value("${app.videos.max-page-size:100}")
+    private int maxPageSize;
+
+    public VideoSearchService(VideoRepository videoRepository, MeterRegistry meterRegistry,
+                              @Value("${app.videos.search.cache.max-size:1000}") long maxSize,
+                              @Value("${app.videos.search.cache.ttl:1m}") Duration ttl) {
+        this.videoRepository = videoRepository;
+        this.firstPages = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, firstPages, "video-searches");
+    }
+
+    public VideoPage search(String query, String cursor, Integer limit) {
+        String term = normalize(query);
+        int pageSize = resolvePageSize(limit);
+
+        if (cursor == null || cursor.isBlank()) {
+            return firstPages.get(pageSize + ":" + term, key -> fetchPage(term, null, pageSize));
+        }
+
+        return fetchPage(term, decodeCursor(cursor), pageSize);
+    }
+
+    public void invalidateAll() {
+        firstPages.invalidateAll();
+    }
+
+    private VideoPage fetchPage(String term, SearchCursor after, int pageSize) {
+        // One extra hit is fetched to know whether another page exists without a count query
+        List<VideoSearchHit> hits = after == null
+                ? videoRepository.searchFirstPage(term, pageSize + 1)
+                : videoRepository.searchPageAfter(term, after.score(), after.id(), pageSize + 1);
+
+        List<VideoSearchHit> pageHits = hits.subList(0, Math.min(hits.size(), pageSize));
+        if (pageHits.isEmpty()) {
+            return new VideoPage(List.of(), null);
+        }
+
+        Map<String, VideoResponse> videos = videoRepository.findResponsesByIdIn(pageHits.stream().map(VideoSearchHit::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(VideoResponse::id, Function.identity()));
+
+        // Keep the ranking order, a video deleted between the two queries is left out
+        List<VideoResponse> items = pageHits.stream()
+                .map(hit -> videos.get(hit.getId()))
+                .filter(Objects::nonNull)
+                .toList();
+
+        if (hits.size() <= pageSize) {
+            return new VideoPage(items, null);
+        }
+
+        VideoSearchHit last = pageHits.get(pageHits.size() - 1);
+        String cursor = last.getScore() + "," + last.getId();
+        return new VideoPage(items, Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Both indexes ignore case and extra whitespace, so neither should split the cache
+    private static String normalize(String query) {
+        String term = query == null ? "" : query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+
+        if (term.isEmpty()) {
+            throw new BadRequestException("Search query must not be empty.");
+        }
+
+        if (term.length() > MAX_QUERY_LENGTH) {
+            throw new BadRequestException("Search query cannot exceed " + MAX_QUERY_LENGTH + " characters.");
+        }
+
+        return term;
+    }
+
+    private int resolvePageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+
+        if (limit < 1 || limit > maxPageSize) {
+            throw new BadRequestException("Limit must be between 1 and " + maxPageSize + ".");
+        }
+
+        return limit;
+    }
+
+    private record SearchCursor(double score, String id) {
+    }
+
+    private SearchCursor decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int commaIndex = decoded.indexOf(',');
+
+            return new SearchCursor(Double.parseDouble(decoded.substring(0, commaIndex)), decoded.substring(commaIndex + 1));
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
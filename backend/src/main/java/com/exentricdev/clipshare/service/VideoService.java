@@ -1,143 +1,214 @@
 package com.exentricdev.clipshare.service;
 
-import com.exentricdev.clipshare.DTO.TranscodeJob;
+import com.exentricdev.clipshare.DTO.VideoPage;
 import com.exentricdev.clipshare.DTO.VideoPatch;
+import com.exentricdev.clipshare.DTO.VideoResponse;
 import com.exentricdev.clipshare.entity.Video;
 import com.exentricdev.clipshare.exception.BadRequestException;
 import com.exentricdev.clipshare.exception.ConflictException;
 import com.exentricdev.clipshare.exception.ForbiddenException;
 import com.exentricdev.clipshare.exception.NotFoundException;
 import com.exentricdev.clipshare.repository.VideoRepository;
+import com.exentricdev.clipshare.storage.VideoStorage;
 import jakarta.transaction.Transactional;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Service
 public class VideoService {
+    private static final Logger log = LoggerFactory.getLogger(VideoService.class);
     private final static int MAX_TITLE_LENGTH = 75;
 
     private final VideoRepository videoRepository;
-    private final RabbitTemplate rabbitTemplate;
-
-    @Value("${app.upload.dir:uploads}")
-    private String uploadDir;
-
-    public VideoService(VideoRepository videoRepository, RabbitTemplate rabbitTemplate) {
+    private final VideoCache videoCache;
+    private final UploadMetrics uploadMetrics;
+    private final MediaAssetService mediaAssetService;
+    private final TranscodeScheduler transcodeScheduler;
+    private final VideoStorage videoStorage;
+    private final TranscodeOutbox transcodeOutbox;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.videos.page-size:24}")
+    private int defaultPageSize;
+
+    @Value("${app.videos.max-page-size:100}")
+    private int maxPageSize;
+
+    public VideoService(VideoRepository videoRepository, VideoCache videoCache, UploadMetrics uploadMetrics,
+                        MediaAssetService mediaAssetService, TranscodeScheduler transcodeScheduler,
+                        VideoStorage videoStorage, TranscodeOutbox transcodeOutbox,
+                        TransactionTemplate transactionTemplate) {
         this.videoRepository = videoRepository;
-        this.rabbitTemplate = rabbitTemplate;
+        this.videoCache = videoCache;
+        this.uploadMetrics = uploadMetrics;
+        this.mediaAssetService = mediaAssetService;
+        this.transcodeScheduler = transcodeScheduler;
+        this.videoStorage = videoStorage;
+        this.transcodeOutbox = transcodeOutbox;
+        this.transactionTemplate = transactionTemplate;
     }
 
-    @Transactional
+    /**
+     * Stores a multipart upload and registers it. The file is copied outside of any transaction,
+     * so a slow transfer does not hold a database connection the whole time it runs.
+     */
     public Video uploadVideo(MultipartFile file, String uploaderId) {
-        System.out.println("Received upload request from uploaderId: " + uploaderId);
-
-        // Check if uploader is already processing another video
-        long processingCount = videoRepository.countByUploaderIdAndIsProcessed(uploaderId, false);
-
-        if (processingCount >= 1) {
-            throw new ConflictException("You can only upload one video at a time.");
-        }
+        log.info("Received upload request from uploaderId: {}", uploaderId);
 
         if (file.isEmpty()) {
             throw new BadRequestException("File is empty");
         }
 
-        // Check file type
-        String contentType = file.getContentType();
+        // Checked before the copy so a rejected upload is not stored, and again when registering
+        String extension = validateUpload(uploaderId, file.getOriginalFilename(), file.getContentType());
 
-        if (contentType == null || !contentType.startsWith("video/")) {
-            throw new BadRequestException("Invalid file type. Only video files are allowed.");
-        }
+        String uuid = UUID.randomUUID().toString().replace("-", "");
+        String rawKey = rawKey(uuid + extension);
+        String contentHash;
 
-        String extension = getFileExtension(file);
+        // Save file to storage
+        try {
+            // Hash while copying so identical content is recognised without reading the file twice
+            MessageDigest digest = ContentHash.newDigest();
 
-        if (extension.isEmpty()) {
-            throw new BadRequestException("File must have an extension");
+            long startedAt = System.nanoTime();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                videoStorage.write(rawKey, in, file.getSize());
+            }
+            uploadMetrics.recordTransfer("multipart", file.getSize(), System.nanoTime() - startedAt);
+
+            contentHash = ContentHash.toHex(digest);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to upload video", e);
         }
 
-        String fileTitle = Optional.ofNullable(file.getOriginalFilename())
-                .map(name -> {
-                    int dotIndex = name.lastIndexOf('.');
+        try {
+            // Called through the template, as a call on this would bypass the transactional proxy
+            return transactionTemplate.execute(status -> registerUploadedVideo(
+                    uuid,
+                    uploaderId,
+                    file.getOriginalFilename(),
+                    file.getContentType(),
+                    file.getSize(),
+                    contentHash
+            ));
+        } catch (RuntimeException e) {
+            try {
+                videoStorage.delete(rawKey);
+            } catch (IOException deleteException) {
+                log.warn("Failed to delete raw upload of rejected videoId: {}", uuid, deleteException);
+            }
 
-                    String base = (dotIndex != -1) ? name.substring(0, dotIndex) : name;
-                    return base.substring(0, Math.min(base.length(), MAX_TITLE_LENGTH));
-                })
-                .orElse("untitled");
+            throw e;
+        }
+    }
 
-        String uuid = UUID.randomUUID().toString().replace("-", "");
-        String storedFileName = uuid + extension;
+    /**
+     * Registers a video whose raw file has already been stored under {@link #rawKey}, e.g. by a
+     * resumable upload session, and queues it for transcoding.
+     *
+     * @param contentHash SHA-256 of the raw file, used to reuse an identical processed upload
+     */
+    @Transactional
+    public Video registerUploadedVideo(String videoId, String uploaderId, String originalFilename, String contentType, long size,
+                                       String contentHash) {
+        String extension = validateUpload(uploaderId, originalFilename, contentType);
+        String storedFileName = videoId + extension;
 
-        // Create Video entity
         Video video = new Video(
                 uploaderId,
-                fileTitle,
+                getFileTitle(originalFilename),
                 null,
                 false,
                 storedFileName,
-                file.getSize(),
+                size,
                 contentType,
                 Instant.now()
         );
 
-        video.setId(uuid);
-        videoRepository.save(video);
+        video.setId(videoId);
+        video.setContentHash(contentHash);
+        publishOrReuse(video);
+        return video;
+    }
+
+    /**
+     * Checks that the uploader may upload a file with the given name and content type.
+     *
+     * @return the lower-cased file extension, including the leading dot
+     */
+    public String validateUpload(String uploaderId, String originalFilename, String contentType) {
+        // Check if uploader is already processing another video
+        long processingCount = videoRepository.countByUploaderIdAndIsProcessed(uploaderId, false);
 
-        Path uploadPath = Path.of(uploadDir)
-                .toAbsolutePath()
-                .normalize();
+        if (processingCount >= 1) {
+            throw new ConflictException("You can only upload one video at a time.");
+        }
 
-        if (!uploadPath.toFile().exists()) {
-            uploadPath.toFile().mkdirs();
+        // Check file type
+        if (contentType == null || !contentType.startsWith("video/")) {
+            throw new BadRequestException("Invalid file type. Only video files are allowed.");
         }
 
-        // Raw upload path
-        Path rawUploadPath = uploadPath.resolve("raw");
+        String extension = getFileExtension(originalFilename);
 
-        if (!rawUploadPath.toFile().exists()) {
-            rawUploadPath.toFile().mkdirs();
+        if (extension.isEmpty()) {
+            throw new BadRequestException("File must have an extension");
         }
 
-        // Processed upload path
-        Path processedUploadPath = uploadPath.resolve("processed");
+        return extension;
+    }
 
-        if (!processedUploadPath.toFile().exists()) {
-            processedUploadPath.toFile().mkdirs();
+    // Content that has already been transcoded is shared instead of being queued again
+    private void publishOrReuse(Video video) {
+        if (!mediaAssetService.attach(video)) {
+            publishTranscodeJob(video);
+            return;
         }
 
-        // Save file to disk
+        videoRepository.save(video);
+
         try {
-            Path targetLocation = rawUploadPath.resolve(storedFileName);
-            file.transferTo(targetLocation.toFile());
+            videoStorage.delete(rawKey(video.getStoredFileName()));
+        } catch (IOException e) {
+            log.warn("Failed to delete duplicate raw upload for videoId: {}", video.getId(), e);
+        }
+    }
 
-            String relativeInputPath = uploadDir + "/raw/" + storedFileName;
-            String relativeOutputPath = uploadDir + "/processed/" + storedFileName;
+    public static String rawKey(String storedFileName) {
+        return VideoStorage.RAW_PREFIX + storedFileName;
+    }
 
-            // Update video URL to point to raw file and save
-            video.setUrl(relativeInputPath);
-            videoRepository.save(video);
+    private void publishTranscodeJob(Video video) {
+        // Storage keys, resolved against the upload directory or bucket by each service
+        String inputKey = rawKey(video.getStoredFileName());
+        String outputKey = VideoStorage.PROCESSED_PREFIX + video.getStoredFileName();
 
-            // Send message to RabbitMQ for processing
-            rabbitTemplate.convertAndSend("video-transcoder", new TranscodeJob(
-                    video.getId(),
-                    relativeInputPath,
-                    relativeOutputPath
-            ));
+        // Update video URL to point to raw file and save, flushed so the outbox row can reference it
+        video.setUrl(inputKey);
+        videoRepository.saveAndFlush(video);
 
-            return video;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to upload video", e);
-        }
+        // Published by the outbox relay once this transaction commits
+        transcodeOutbox.enqueue(video, inputKey, outputKey, transcodeScheduler.priorityFor(video));
     }
 
+    @Transactional
     public boolean deleteVideo(String videoId, String requesterId) {
         Video video = videoRepository.findById(videoId)
                 .orElseThrow(() -> new NotFoundException("Video with ID " + videoId + " not found."));
@@ -146,16 +217,12 @@ public class VideoService {
             throw new ForbiddenException("You are not authorized to delete this video.");
         }
 
-        // Delete file from disk
-        Path filePath = Path.of(video.getUrl()).toAbsolutePath().normalize();
-        try {
-            Files.deleteIfExists(filePath);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to delete video file", e);
-        }
+        // Files shared with identical uploads are kept until their last video is deleted
+        mediaAssetService.release(video);
 
         // Delete from database
         videoRepository.deleteById(videoId);
+        videoCache.invalidate(videoId, true);
         return true;
     }
 
@@ -167,6 +234,8 @@ public class VideoService {
             throw new ForbiddenException("You are not authorized to update this video.");
         }
 
+        boolean titleChanged = false;
+
         // Handle title update
         if (updates.title() != null && !updates.title().isBlank()) {
             // Limit title length
@@ -174,16 +243,27 @@ public class VideoService {
                 throw new BadRequestException("Title cannot exceed " + MAX_TITLE_LENGTH + " characters.");
             }
 
+            titleChanged = !updates.title().equals(video.getTitle());
             video.setTitle(updates.title());
         }
 
         videoRepository.save(video);
+        videoCache.invalidate(videoId, titleChanged);
         return video;
     }
 
-    private String getFileExtension(MultipartFile file) {
-        String original = file.getOriginalFilename();
+    static String getFileTitle(String originalFilename) {
+        return Optional.ofNullable(originalFilename)
+                .map(name -> {
+                    int dotIndex = name.lastIndexOf('.');
+
+                    String base = (dotIndex != -1) ? name.substring(0, dotIndex) : name;
+                    return base.substring(0, Math.min(base.length(), MAX_TITLE_LENGTH));
+                })
+                .orElse("untitled");
+    }
 
+    static String getFileExtension(String original) {
         if (original == null) {
             throw new IllegalArgumentException("File name is missing");
         }
@@ -197,15 +277,76 @@ public class VideoService {
     }
 
     public Video getVideoById(String id) {
-        return videoRepository.findById(id)
+        return videoCache.get(id)
                 .orElseThrow(() -> new NotFoundException("Video with ID " + id + " not found."));
     }
 
-    public List<Video> getVideosByUploader(String uploaderId) {
-        return videoRepository.findByUploaderId(uploaderId);
+    public VideoPage getVideosByUploader(String uploaderId, String cursor, Integer limit) {
+        Limit pageLimit = Limit.of(resolvePageSize(limit) + 1);
+        VideoCursor after = decodeCursor(cursor);
+
+        List<VideoResponse> videos = after == null
+                ? videoRepository.findFirstPageByUploaderId(uploaderId, pageLimit)
+                : videoRepository.findPageByUploaderIdAfter(uploaderId, after.uploadedAt(), after.id(), pageLimit);
+
+        return toPage(videos, pageLimit.max() - 1);
     }
 
-    public List<Video> getAllVideos() {
-        return videoRepository.findAll();
+    public VideoPage getAllVideos(String cursor, Integer limit) {
+        Limit pageLimit = Limit.of(resolvePageSize(limit) + 1);
+        VideoCursor after = decodeCursor(cursor);
+
+        List<VideoResponse> videos = after == null
+                ? videoRepository.findFirstPage(pageLimit)
+                : videoRepository.findPageAfter(after.uploadedAt(), after.id(), pageLimit);
+
+        return toPage(videos, pageLimit.max() - 1);
+    }
+
+    record VideoCursor(Instant uploadedAt, String id) {
+    }
+
+    private int resolvePageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+
+        if (limit < 1 || limit > maxPageSize) {
+            throw new BadRequestException("Limit must be between 1 and " + maxPageSize + ".");
+        }
+
+        return limit;
+    }
+
+    // One extra row is fetched to know whether another page exists without a count query
+    private VideoPage toPage(List<VideoResponse> videos, int pageSize) {
+        if (videos.size() <= pageSize) {
+            return new VideoPage(videos, null);
+        }
+
+        List<VideoResponse> items = videos.subList(0, pageSize);
+        VideoResponse last = items.get(items.size() - 1);
+
+        return new VideoPage(items, encodeCursor(new VideoCursor(last.uploadedAt(), last.id())));
+    }
+
+    static String encodeCursor(VideoCursor cursor) {
+        String decoded = cursor.uploadedAt().toString() + "," + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static VideoCursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int commaIndex = decoded.indexOf(',');
+
+            return new VideoCursor(Instant.parse(decoded.substring(0, commaIndex)), decoded.substring(commaIndex + 1));
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
     }
 }
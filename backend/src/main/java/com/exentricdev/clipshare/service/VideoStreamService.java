@@ -0,0 +1,292 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.entity.Video;
+import com.exentricdev.clipshare.exception.NotFoundException;
+import com.exentricdev.clipshare.storage.StoredObject;
+import com.exentricdev.clipshare.storage.VideoStorage;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@Service
+public class VideoStreamService {
+    // Tomcat request attributes used to hand a file region to the connector for sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final int MAX_RANGES = 16;
+
+    private static final Pattern HLS_FILE_NAME = Pattern.compile("[A-Za-z0-9_-]+\\.(m3u8|m4s|mp4|ts)");
+    private static final Pattern HLS_VARIANT_NAME = Pattern.compile("v[0-9]+");
+
+    private static final Map<String, String> ARTWORK_FILES = Map.of(
+            "poster.jpg", "image/jpeg",
+            "poster.webp", "image/webp",
+            "thumb_320.jpg", "image/jpeg",
+            "thumb_640.jpg", "image/jpeg",
+            "sprite.jpg", "image/jpeg",
+            "sprite.vtt", "text/vtt"
+    );
+
+    private final VideoStorage videoStorage;
+    private final StreamBandwidthLimiter bandwidthLimiter;
+
+    public VideoStreamService(VideoStorage videoStorage, StreamBandwidthLimiter bandwidthLimiter) {
+        this.videoStorage = videoStorage;
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    public void stream(Video video, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (redirectToPresigned(video.getUrl(), response)) {
+            return;
+        }
+
+        StoredObject object = videoStorage.find(video.getUrl())
+                .orElseThrow(() -> new NotFoundException("Video file for ID " + video.getId() + " not found."));
+
+        // Stored but revalidated, the URL is per video rather than per file. Without an explicit
+        // header Spring Security marks the response no-store, and validators would go unused.
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePublic().getHeaderValue());
+        stream(object, video.getContentType(), request, response);
+    }
+
+    /**
+     * Serves a playlist or segment from the HLS output directory of a video. Segments never
+     * change once published, so they are cached as immutable; playlists are revalidated.
+     */
+    public void streamHlsFile(Video video, String variant, String file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!HLS_FILE_NAME.matcher(file).matches() || (variant != null && !HLS_VARIANT_NAME.matcher(variant).matches())) {
+            throw new NotFoundException("HLS file " + file + " not found.");
+        }
+
+        // The stored URL points at the master playlist inside the HLS directory, the name
+        // patterns above keep the key inside it
+        String baseKey = VideoStorage.parentKey(video.getUrl());
+        String key = VideoStorage.childKey(variant != null ? VideoStorage.childKey(baseKey, variant) : baseKey, file);
+
+        String contentType;
+        if (file.endsWith(".m3u8")) {
+            contentType = "application/vnd.apple.mpegurl";
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePublic().getHeaderValue());
+        } else {
+            // Playlists reference segments relative to themselves, so only segments can be redirected
+            if (redirectToPresigned(key, response)) {
+                return;
+            }
+
+            contentType = file.endsWith(".ts") ? "video/mp2t" : "video/mp4";
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable().getHeaderValue());
+        }
+
+        StoredObject object = videoStorage.find(key)
+                .orElseThrow(() -> new NotFoundException("HLS file " + file + " not found."));
+
+        stream(object, contentType, request, response);
+    }
+
+    /**
+     * Serves a poster, thumbnail or seek-preview file. Artwork is written once per video and
+     * never changes, so it is cached as immutable.
+     */
+    public void streamArtwork(Video video, String file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String contentType = ARTWORK_FILES.get(file);
+
+        if (contentType == null || !video.hasArtwork()) {
+            throw new NotFoundException("Artwork " + file + " not found.");
+        }
+
+        StoredObject object = videoStorage.find(VideoStorage.childKey(video.getArtworkPath(), file))
+                .orElseThrow(() -> new NotFoundException("Artwork " + file + " not found."));
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable().getHeaderValue());
+        stream(object, contentType, request, response);
+    }
+
+    /**
+     * Sends the client straight to the object store when it hands out presigned URLs, so the
+     * bytes never pass through the backend. The store handles ranges and validators itself.
+     */
+    private boolean redirectToPresigned(String key, HttpServletResponse response) {
+        Optional<URI> url = videoStorage.presignedReadUrl(key);
+
+        if (url.isEmpty()) {
+            return false;
+        }
+
+        response.setStatus(HttpServletResponse.SC_FOUND);
+        response.setHeader(HttpHeaders.LOCATION, url.get().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+        return true;
+    }
+
+    private void stream(StoredObject object, String contentType, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Content-Length comes from the processed file, not the raw upload
+        long length = object.length();
+        long lastModified = object.lastModified();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        List<long[]> ranges = resolveRanges(request, etag, lastModified, length);
+
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            writeRegion(object, 0, length, request, response);
+        } else if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        } else if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            response.setContentLengthLong(end - start + 1);
+            writeRegion(object, start, end - start + 1, request, response);
+        } else {
+            writeMultipart(object, contentType, ranges, length, request, response);
+        }
+    }
+
+    /**
+     * Returns null when the full entity should be sent, an empty list when the range is not
+     * satisfiable, otherwise the inclusive [start, end] byte positions to send.
+     */
+    static List<long[]> resolveRanges(HttpServletRequest request, String etag, long lastModified, long length) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+
+        if (rangeHeader == null || !isIfRangeSatisfied(request, etag, lastModified)) {
+            return null;
+        }
+
+        List<HttpRange> httpRanges;
+        try {
+            httpRanges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // Malformed Range headers are ignored, as per RFC 9110
+            return null;
+        }
+
+        if (httpRanges.isEmpty() || httpRanges.size() > MAX_RANGES) {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<>(httpRanges.size());
+        for (HttpRange httpRange : httpRanges) {
+            try {
+                long start = httpRange.getRangeStart(length);
+                long end = httpRange.getRangeEnd(length);
+
+                // HttpRange clamps the end to the length but lets a start past it through
+                if (start <= end) {
+                    ranges.add(new long[]{start, end});
+                }
+            } catch (IllegalArgumentException e) {
+                // Unsatisfiable range, skip it
+            }
+        }
+
+        return ranges;
+    }
+
+    private static boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+
+        if (ifRange == null) {
+            return true;
+        }
+
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+
+        try {
+            long ifRangeTime = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant()
+                    .toEpochMilli();
+
+            // HTTP dates have second precision
+            return lastModified / 1000 <= ifRangeTime / 1000;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void writeMultipart(StoredObject object, String contentType, List<long[]> ranges, long length,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+
+        if (isHead(request)) {
+            return;
+        }
+
+        OutputStream out = bandwidthLimiter.throttle(response.getOutputStream(), request);
+
+        for (long[] range : ranges) {
+            String partHeader = "\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n";
+
+            out.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+            object.copyRange(range[0], range[1] - range[0] + 1, out);
+        }
+
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private void writeRegion(StoredObject object, long start, long count, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (isHead(request) || count == 0) {
+            return;
+        }
+
+        // Let the connector send the region with sendfile when the object is a local file,
+        // unless the bandwidth is limited, sendfile would bypass the limiter
+        Optional<Path> path = object.localPath();
+        if (path.isPresent() && !bandwidthLimiter.isEnabled() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.get().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + count);
+            return;
+        }
+
+        object.copyRange(start, count, bandwidthLimiter.throttle(response.getOutputStream(), request));
+    }
+
+    private boolean isHead(HttpServletRequest request) {
+        return HttpMethod.HEAD.matches(request.getMethod());
+    }
+}
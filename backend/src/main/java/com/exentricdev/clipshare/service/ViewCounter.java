@@ -0,0 +1,127 @@
+package com.exentricdev.clipshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts playbacks in memory and writes them behind in one upsert per flush, instead of one
+ * row update per streaming request. Increments go to striped {@link LongAdder}s, so concurrent
+ * players of the same video do not contend. Every node flushes its own deltas and the upsert
+ * adds them to the stored count, so any number of replicas can count at once.
+ *
+ * <p>A player fetches a video with many range requests, so only the first request of each
+ * viewer within the session window is counted. Viewers are told apart by address and user
+ * agent, as players do not send credentials. A viewer whose requests are spread over several
+ * nodes may be counted once per node.
+ */
+@Service
+public class ViewCounter {
+    private static final Logger log = LoggerFactory.getLogger(ViewCounter.class);
+
+    // Sorted ids take row locks in the same order on every node, so concurrent flushes cannot deadlock.
+    // recent_views is decayed to now before the delta is added, see TrendingFeed.
+    private static final String UPSERT = """
+            INSERT INTO video_view_count (video_id, view_count, recent_views, updated_at)
+            SELECT d.video_id, d.delta, d.delta, now()
+            FROM unnest(?::varchar[], ?::bigint[]) AS d(video_id, delta)
+            JOIN video v ON v.id = d.video_id
+            ORDER BY d.video_id
+            ON CONFLICT (video_id) DO UPDATE SET
+                view_count = video_view_count.view_count + EXCLUDED.view_count,
+                recent_views = video_view_count.recent_views
+                        * power(0.5, extract(epoch from EXCLUDED.updated_at - video_view_count.updated_at) / ?)
+                        + EXCLUDED.recent_views,
+                updated_at = EXCLUDED.updated_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration recentHalfLife;
+    private final Map<String, LongAdder> pending = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> sessions;
+    private final Counter flushedViews;
+
+    public ViewCounter(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                       @Value("${app.views.session-window:30m}") Duration sessionWindow,
+                       @Value("${app.views.max-sessions:100000}") long maxSessions,
+                       @Value("${app.views.recent-half-life:24h}") Duration recentHalfLife) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.recentHalfLife = recentHalfLife;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterWrite(sessionWindow)
+                .build();
+        this.flushedViews = Counter.builder("clipshare.views.flushed")
+                .description("Playbacks written to the view counts")
+                .register(meterRegistry);
+    }
+
+    public void recordPlayback(String videoId, HttpServletRequest request) {
+        String session = videoId + "|" + request.getRemoteAddr() + "|" + request.getHeader(HttpHeaders.USER_AGENT);
+
+        if (sessions.asMap().putIfAbsent(session, Boolean.TRUE) == null) {
+            pending.computeIfAbsent(videoId, id -> new LongAdder()).increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.views.flush-interval:PT10S}")
+    public void flush() {
+        Map<String, Long> deltas = new TreeMap<>();
+
+        for (Map.Entry<String, LongAdder> entry : pending.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+
+            if (delta > 0) {
+                deltas.put(entry.getKey(), delta);
+            } else {
+                // Idle videos are dropped so the map only holds recently played ones. A playback
+                // racing with the removal can be lost, which view counts can afford.
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(UPSERT);
+                statement.setArray(1, connection.createArrayOf("varchar", deltas.keySet().toArray()));
+                statement.setArray(2, connection.createArrayOf("bigint", deltas.values().toArray()));
+                statement.setDouble(3, recentHalfLife.toSeconds());
+                return statement;
+            });
+
+            flushedViews.increment(deltas.values().stream().mapToLong(Long::longValue).sum());
+        } catch (DataAccessException e) {
+            // Keep the deltas for the next flush, by then a deleted video no longer joins
+            log.warn("Failed to flush view counts of {} videos, retrying on the next flush", deltas.size(), e);
+            deltas.forEach((videoId, delta) -> pending.computeIfAbsent(videoId, id -> new LongAdder()).add(delta));
+        }
+    }
+
+    // Counts still in memory would otherwise be lost on every restart or deploy
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
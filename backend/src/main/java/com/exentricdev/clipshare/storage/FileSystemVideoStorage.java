@@ -0,0 +1,115 @@
+package com.exentricdev.clipshare.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Stores videos on a volume shared by the backend and the transcoders, under {@code app.upload.dir}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemVideoStorage implements VideoStorage {
+    private final Path root;
+
+    public FileSystemVideoStorage(@Value("${app.upload.dir:uploads}") String uploadDir) {
+        this.root = Path.of(uploadDir).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void write(String key, InputStream content, long size) throws IOException {
+        Path path = resolve(key);
+        Files.createDirectories(path.getParent());
+        Files.copy(content, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void moveIn(String key, Path file) throws IOException {
+        Path path = resolve(key);
+        Files.createDirectories(path.getParent());
+        Files.move(file, path, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public Optional<StoredObject> find(String key) throws IOException {
+        Path path = resolve(key);
+
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new LocalObject(path, Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public void deleteTree(String key) throws IOException {
+        Path dir = resolve(key);
+
+        if (!Files.exists(dir)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // Absolute keys of older videos resolve to themselves
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+
+        if (!Path.of(key).isAbsolute() && !path.startsWith(root)) {
+            throw new IllegalArgumentException("Storage key escapes the upload directory: " + key);
+        }
+
+        return path;
+    }
+
+    private record LocalObject(Path path, long length, long lastModified) implements StoredObject {
+        @Override
+        public Optional<Path> localPath() {
+            return Optional.of(path);
+        }
+
+        @Override
+        public void copyRange(long position, long count, OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long remaining = count;
+
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of file while streaming");
+                    }
+
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+        }
+    }
+}
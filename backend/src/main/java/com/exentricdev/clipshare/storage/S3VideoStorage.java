@@ -0,0 +1,198 @@
+package com.exentricdev.clipshare.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stores videos in an S3-compatible bucket, so the backend and transcoders need no shared disk.
+ * Uploads go through the multipart-enabled async client, which splits anything above the part
+ * size into parts uploaded in parallel. Reads are ranged GETs, or presigned URLs handed to the client.
+ */
+@Component
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "s3")
+public class S3VideoStorage implements VideoStorage {
+    // S3 accepts at most this many keys per DeleteObjects request
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final S3Presigner s3Presigner;
+    private final String bucket;
+    private final boolean presignedReads;
+    private final Duration presignTtl;
+
+    // Feeds request bodies read from streams to the async client
+    private final ExecutorService streamReader = Executors.newVirtualThreadPerTaskExecutor();
+
+    public S3VideoStorage(S3Client s3Client, S3AsyncClient s3AsyncClient, S3Presigner s3Presigner,
+                          @Value("${app.storage.s3.bucket}") String bucket,
+                          @Value("${app.storage.s3.presigned-reads:false}") boolean presignedReads,
+                          @Value("${app.storage.s3.presign-ttl:15m}") Duration presignTtl) {
+        this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3Presigner = s3Presigner;
+        this.bucket = bucket;
+        this.presignedReads = presignedReads;
+        this.presignTtl = presignTtl;
+    }
+
+    @Override
+    public void write(String key, InputStream content, long size) throws IOException {
+        put(key, AsyncRequestBody.fromInputStream(content, size, streamReader));
+    }
+
+    @Override
+    public void moveIn(String key, Path file) throws IOException {
+        put(key, AsyncRequestBody.fromFile(file));
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public Optional<StoredObject> find(String key) throws IOException {
+        String objectKey = objectKey(key);
+
+        try {
+            HeadObjectResponse head = s3Client.headObject(r -> r.bucket(bucket).key(objectKey));
+            return Optional.of(new RemoteObject(objectKey, head.contentLength(), head.lastModified().toEpochMilli()));
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+
+            throw new IOException("Failed to look up " + objectKey, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3Client.deleteObject(r -> r.bucket(bucket).key(objectKey(key)));
+        } catch (S3Exception e) {
+            throw new IOException("Failed to delete " + key, e);
+        }
+    }
+
+    @Override
+    public void deleteTree(String key) throws IOException {
+        String prefix = objectKey(key) + "/";
+
+        try {
+            List<ObjectIdentifier> objects = s3Client.listObjectsV2Paginator(r -> r.bucket(bucket).prefix(prefix))
+                    .contents().stream()
+                    .map(S3Object::key)
+                    .map(objectKey -> ObjectIdentifier.builder().key(objectKey).build())
+                    .toList();
+
+            for (int i = 0; i < objects.size(); i += DELETE_BATCH_SIZE) {
+                Delete batch = Delete.builder()
+                        .objects(objects.subList(i, Math.min(objects.size(), i + DELETE_BATCH_SIZE)))
+                        .quiet(true)
+                        .build();
+
+                s3Client.deleteObjects(r -> r.bucket(bucket).delete(batch));
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Failed to delete " + prefix, e);
+        }
+    }
+
+    @Override
+    public Optional<URI> presignedReadUrl(String key) {
+        if (!presignedReads) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(s3Presigner.presignGetObject(r -> r
+                    .signatureDuration(presignTtl)
+                    .getObjectRequest(get -> get.bucket(bucket).key(objectKey(key))))
+                    .url()
+                    .toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Presigned URL is not a valid URI", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        streamReader.close();
+    }
+
+    private void put(String key, AsyncRequestBody body) throws IOException {
+        try {
+            s3AsyncClient.putObject(r -> r.bucket(bucket).key(objectKey(key)), body).join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to upload " + key, e.getCause());
+        }
+    }
+
+    // Keys of videos stored before object storage are absolute paths
+    private static String objectKey(String key) {
+        return key.startsWith("/") ? key.substring(1) : key;
+    }
+
+    private final class RemoteObject implements StoredObject {
+        private final String objectKey;
+        private final long length;
+        private final long lastModified;
+
+        private RemoteObject(String objectKey, long length, long lastModified) {
+            this.objectKey = objectKey;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public Optional<Path> localPath() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void copyRange(long position, long count, OutputStream out) throws IOException {
+            String range = "bytes=" + position + "-" + (position + count - 1);
+
+            try (ResponseInputStream<GetObjectResponse> in = s3Client.getObject(r -> r.bucket(bucket).key(objectKey).range(range))) {
+                in.transferTo(out);
+            } catch (S3Exception e) {
+                throw new IOException("Failed to read " + objectKey, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.exentricdev.clipshare.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Metadata and ranged access to one stored object, as needed to serve it over HTTP.
+ */
+public interface StoredObject {
+    long length();
+
+    long lastModified();
+
+    /**
+     * The object's file on this machine, so the connector can send it with sendfile.
+     */
+    Optional<Path> localPath();
+
+    void copyRange(long position, long count, OutputStream out) throws IOException;
+}
@@ -0,0 +1,52 @@
+package com.exentricdev.clipshare.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where raw uploads and transcoded output live. Objects are addressed by keys such as
+ * {@code raw/<file>} or {@code processed/<file>}, which are what videos store as their URL.
+ * Keys of videos stored before this abstraction are absolute paths on the shared volume.
+ */
+public interface VideoStorage {
+    String RAW_PREFIX = "raw/";
+    String PROCESSED_PREFIX = "processed/";
+
+    /**
+     * Stores the content read from the stream, which is consumed exactly once in order.
+     */
+    void write(String key, InputStream content, long size) throws IOException;
+
+    /**
+     * Stores a local file under the key, taking ownership of it. The file is gone afterwards.
+     */
+    void moveIn(String key, Path file) throws IOException;
+
+    Optional<StoredObject> find(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Deletes every object below the key, e.g. an HLS ladder or an artwork directory.
+     */
+    void deleteTree(String key) throws IOException;
+
+    /**
+     * A time-limited URL clients can read the object from directly, if the storage supports it.
+     */
+    default Optional<URI> presignedReadUrl(String key) {
+        return Optional.empty();
+    }
+
+    static String parentKey(String key) {
+        int slashIndex = key.lastIndexOf('/');
+        return slashIndex > 0 ? key.substring(0, slashIndex) : "";
+    }
+
+    static String childKey(String parent, String name) {
+        return parent.isEmpty() ? name : parent + "/" + name;
+    }
+}
@@ -0,0 +1,9 @@
+-- Exponentially decayed playback activity, kept up to date by every counter flush so the trending
+-- feed can rank videos without replaying their view history
+ALTER TABLE video_view_count ADD COLUMN recent_views DOUBLE PRECISION NOT NULL DEFAULT 0;
+ALTER TABLE video_view_count ADD COLUMN updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now();
+
+UPDATE video_view_count SET recent_views = view_count;
+
+-- The feed refresh only reads rows changed since its previous run
+CREATE INDEX idx_video_view_count_updated_at ON video_view_count(updated_at);
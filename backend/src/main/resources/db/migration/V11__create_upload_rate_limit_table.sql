@@ -0,0 +1,8 @@
+-- Upload token buckets shared by every backend node, refilled lazily whenever tokens are reserved
+CREATE TABLE upload_rate_limit (
+    user_id VARCHAR(255) PRIMARY KEY,
+    tokens DOUBLE PRECISION NOT NULL,
+    refilled_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_upload_rate_limit_refilled_at ON upload_rate_limit(refilled_at);
@@ -0,0 +1,2 @@
+-- Set once the transcoder reports progress for the video, jobs that started are never re-published
+ALTER TABLE transcode_outbox ADD COLUMN started_at TIMESTAMP WITH TIME ZONE;
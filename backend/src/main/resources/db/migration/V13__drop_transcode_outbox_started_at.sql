@@ -0,0 +1,2 @@
+-- Jobs now age in the outbox before they are published, so nothing tracks whether a sent job started
+ALTER TABLE transcode_outbox DROP COLUMN started_at;
@@ -0,0 +1,11 @@
+CREATE TABLE upload_session (
+    id VARCHAR(255) PRIMARY KEY,
+    uploader_id VARCHAR(255) NOT NULL,
+    file_name VARCHAR(255) NOT NULL,
+    content_type VARCHAR(255) NOT NULL,
+    extension VARCHAR(32) NOT NULL,
+    size BIGINT NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX idx_upload_session_created_at ON upload_session(created_at);
@@ -0,0 +1 @@
+ALTER TABLE video ADD COLUMN stream_format VARCHAR(16) NOT NULL DEFAULT 'mp4';
@@ -0,0 +1,5 @@
+-- Keyset pagination orders by (uploaded_at, id), include id so the index covers the tie-breaker
+DROP INDEX idx_video_uploaded_at;
+CREATE INDEX idx_video_uploaded_at ON video(uploaded_at, id);
+
+CREATE INDEX idx_video_uploader_uploaded_at ON video(uploader_id, uploaded_at, id);
@@ -0,0 +1 @@
+ALTER TABLE video ADD COLUMN artwork_path VARCHAR(255);
@@ -0,0 +1,12 @@
+-- Transcoded output shared by every video uploaded with the same content
+CREATE TABLE media_asset (
+    content_hash VARCHAR(64) PRIMARY KEY,
+    url VARCHAR(255) NOT NULL,
+    stream_format VARCHAR(16) NOT NULL,
+    artwork_path VARCHAR(255),
+    reference_count INTEGER NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+ALTER TABLE video ADD COLUMN content_hash VARCHAR(64);
+CREATE INDEX idx_video_content_hash ON video(content_hash);
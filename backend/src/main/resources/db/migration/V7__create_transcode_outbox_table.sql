@@ -0,0 +1,16 @@
+-- Transcode jobs written in the same transaction as their video, published by the outbox relay
+CREATE TABLE transcode_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    video_id VARCHAR(255) NOT NULL REFERENCES video(id) ON DELETE CASCADE,
+    uploader_id VARCHAR(255) NOT NULL,
+    input_key VARCHAR(255) NOT NULL,
+    output_key VARCHAR(255) NOT NULL,
+    priority INTEGER NOT NULL,
+    uploaded_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    sent_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX idx_transcode_outbox_pending ON transcode_outbox(id) WHERE sent_at IS NULL;
+CREATE INDEX idx_transcode_outbox_video_id ON transcode_outbox(video_id);
+CREATE INDEX idx_transcode_outbox_sent_at ON transcode_outbox(sent_at) WHERE sent_at IS NOT NULL;
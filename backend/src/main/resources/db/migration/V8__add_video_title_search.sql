@@ -0,0 +1,10 @@
+-- Title search: full-text matches ranked by ts_rank, typos and partial words caught by trigrams
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Generated from the title, so it can never drift from it whichever code path changes the title.
+-- The "simple" configuration does not stem, titles are often file names in any language.
+ALTER TABLE video ADD COLUMN title_search TSVECTOR
+    GENERATED ALWAYS AS (to_tsvector('simple', title)) STORED;
+
+CREATE INDEX idx_video_title_search ON video USING GIN (title_search);
+CREATE INDEX idx_video_title_trgm ON video USING GIN (title gin_trgm_ops);
@@ -0,0 +1,5 @@
+-- Playback counts, kept apart from video so the frequent counter upserts never lock or bloat its rows
+CREATE TABLE video_view_count (
+    video_id VARCHAR(255) PRIMARY KEY REFERENCES video(id) ON DELETE CASCADE,
+    view_count BIGINT NOT NULL
+);
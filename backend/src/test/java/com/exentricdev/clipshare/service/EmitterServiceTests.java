@@ -0,0 +1,61 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.TranscodeProgress;
+import com.exentricdev.clipshare.DTO.UserEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class EmitterServiceTests {
+    private static final String USER_ID = "user-1";
+
+    private final EmitterService emitterService = new EmitterService(mock(RabbitTemplate.class), new SimpleMeterRegistry(),
+            50, Duration.ofMinutes(10), 10_000);
+
+    private final UserEvent uploaded = new UserEvent("1000-node1-1", USER_ID, "video-uploaded", "{}");
+    private final UserEvent progress = new UserEvent("1001-node1-2", USER_ID, "video-progress",
+            new TranscodeProgress("abc", USER_ID, 42.0, 60.0, 1.5, 30L));
+    private final UserEvent processed = new UserEvent("1002-node2-1", USER_ID, "video-processed", "{}");
+
+    @Test
+    void progressEventsCarryNoId() {
+        assertThat(text(EmitterService.toSseEvent(progress))).doesNotContain("id:").contains("event:video-progress");
+        assertThat(text(EmitterService.toSseEvent(processed))).contains("id:1002-node2-1");
+    }
+
+    @Test
+    void reconnectAfterProgressReplaysOnlyMissedEvents() {
+        emitterService.deliverLocally(uploaded);
+        emitterService.deliverLocally(progress);
+        emitterService.deliverLocally(processed);
+
+        // The client saw the upload and the progress, which left its last event id on the upload
+        assertThat(emitterService.eventsAfter(USER_ID, uploaded.id())).containsExactly(processed);
+        assertThat(emitterService.eventsAfter(USER_ID, processed.id())).isEmpty();
+    }
+
+    @Test
+    void reconnectWithUnbufferedIdReplaysNewerEvents() {
+        emitterService.deliverLocally(uploaded);
+        emitterService.deliverLocally(progress);
+        emitterService.deliverLocally(processed);
+
+        // An id handed out for a progress event by a node from before ids were dropped
+        assertThat(emitterService.eventsAfter(USER_ID, progress.id())).containsExactly(processed);
+        assertThat(emitterService.eventsAfter(USER_ID, "999-evicted-7")).containsExactly(uploaded, processed);
+        assertThat(emitterService.eventsAfter(USER_ID, "garbage")).containsExactly(uploaded, processed);
+    }
+
+    private static String text(SseEmitter.SseEventBuilder event) {
+        return event.build().stream()
+                .map(part -> String.valueOf(part.getData()))
+                .collect(Collectors.joining());
+    }
+}
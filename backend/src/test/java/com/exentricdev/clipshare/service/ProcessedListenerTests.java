@@ -0,0 +1,73 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.ProcessedVideo;
+import com.exentricdev.clipshare.repository.VideoRepository;
+import com.exentricdev.clipshare.storage.VideoStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.JacksonJsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ProcessedListenerTests {
+    private final MessageConverter messageConverter = new JacksonJsonMessageConverter();
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    private final ProcessedListener listener = new ProcessedListener(mock(VideoRepository.class), mock(EmitterService.class),
+            mock(VideoCache.class), mock(MediaAssetService.class), mock(VideoStorage.class), messageConverter,
+            rabbitTemplate, transactionTemplate, new SimpleMeterRegistry());
+
+    @Test
+    void retriesBatchOnTransientFailure() {
+        doThrow(new CannotCreateTransactionException("Connection is not available"))
+                .when(transactionTemplate).executeWithoutResult(any());
+
+        List<Message> batch = List.of(notification("a"), unreadable());
+
+        assertThatThrownBy(() -> listener.handleProcessedVideos(batch))
+                .isInstanceOf(CannotCreateTransactionException.class);
+        verify(rabbitTemplate, never()).send(any(), any(), any(Message.class));
+    }
+
+    @Test
+    void parksNotificationsThatFailOnTheirOwn() {
+        doThrow(new DataIntegrityViolationException("duplicate key"))
+                .when(transactionTemplate).executeWithoutResult(any());
+
+        List<Message> batch = List.of(notification("a"), notification("b"), unreadable());
+        listener.handleProcessedVideos(batch);
+
+        // The batch, then each notification alone
+        verify(transactionTemplate, times(3)).executeWithoutResult(any());
+        verify(rabbitTemplate, times(3)).send(eq(""), eq(ProcessedListener.FAILURES_QUEUE), any(Message.class));
+    }
+
+    private Message notification(String videoId) {
+        return messageConverter.toMessage(new ProcessedVideo(videoId, "processed/" + videoId + ".mp4", "mp4", null),
+                new MessageProperties());
+    }
+
+    private static Message unreadable() {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        return new Message("{not json".getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
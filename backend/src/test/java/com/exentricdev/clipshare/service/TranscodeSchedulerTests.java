@@ -0,0 +1,70 @@
+package com.exentricdev.clipshare.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TranscodeSchedulerTests {
+    private static final long MB = 1024 * 1024;
+    private static final long[] SIZE_TIERS = {20 * MB, 100 * MB, 300 * MB};
+    private static final long FAIR_SHARE = 200 * MB;
+
+    @Test
+    void smallerJobsGetHigherPriority() {
+        assertThat(priority(10 * MB, 0)).isEqualTo(6);
+        assertThat(priority(20 * MB, 0)).isEqualTo(6);
+        assertThat(priority(50 * MB, 0)).isEqualTo(5);
+        assertThat(priority(200 * MB, 0)).isEqualTo(4);
+        assertThat(priority(1024 * MB, 0)).isEqualTo(3);
+    }
+
+    @Test
+    void uploaderDropsOneLevelEachTimeRecentWorkDoubles() {
+        assertThat(priority(10 * MB, FAIR_SHARE - 1)).isEqualTo(6);
+        assertThat(priority(10 * MB, FAIR_SHARE)).isEqualTo(5);
+        assertThat(priority(10 * MB, 3 * FAIR_SHARE)).isEqualTo(4);
+        assertThat(priority(10 * MB, 7 * FAIR_SHARE)).isEqualTo(3);
+    }
+
+    @Test
+    void fairnessPenaltyIsBounded() {
+        assertThat(priority(10 * MB, 1000 * FAIR_SHARE)).isEqualTo(3);
+        assertThat(priority(1024 * MB, Long.MAX_VALUE)).isZero();
+    }
+
+    @Test
+    void priorityNeverExceedsMaximum() {
+        long[] manyTiers = {MB, 2 * MB, 3 * MB, 4 * MB, 5 * MB, 6 * MB, 7 * MB, 8 * MB};
+
+        assertThat(TranscodeScheduler.priority(0, 0, manyTiers, FAIR_SHARE)).isEqualTo(TranscodeScheduler.MAX_PRIORITY);
+    }
+
+    @Test
+    void zeroFairShareDoesNotDivideByZero() {
+        assertThat(TranscodeScheduler.priority(10 * MB, 0, SIZE_TIERS, 0)).isEqualTo(6);
+        assertThat(TranscodeScheduler.priority(10 * MB, MB, SIZE_TIERS, 0)).isEqualTo(3);
+    }
+
+    @Test
+    void waitingJobsGainOneLevelPerAgingInterval() {
+        Duration interval = Duration.ofMinutes(10);
+
+        assertThat(TranscodeScheduler.aged(3, Duration.ofMinutes(9), interval)).isEqualTo(3);
+        assertThat(TranscodeScheduler.aged(3, Duration.ofMinutes(10), interval)).isEqualTo(4);
+        assertThat(TranscodeScheduler.aged(3, Duration.ofMinutes(35), interval)).isEqualTo(6);
+    }
+
+    @Test
+    void agingStopsAtMaximumAndIgnoresClockSkew() {
+        Duration interval = Duration.ofMinutes(10);
+
+        assertThat(TranscodeScheduler.aged(3, Duration.ofDays(30), interval)).isEqualTo(TranscodeScheduler.MAX_PRIORITY);
+        assertThat(TranscodeScheduler.aged(3, Duration.ofMinutes(-5), interval)).isEqualTo(3);
+    }
+
+    private static int priority(long sizeBytes, long recentBytes) {
+        return TranscodeScheduler.priority(sizeBytes, recentBytes, SIZE_TIERS, FAIR_SHARE);
+    }
+}
@@ -0,0 +1,52 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.exception.BadRequestException;
+import com.exentricdev.clipshare.service.VideoService.VideoCursor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VideoServiceTests {
+
+    @Test
+    void cursorRoundTrips() {
+        VideoCursor cursor = new VideoCursor(Instant.parse("2026-03-01T12:30:45.123456Z"), "3f2a9c1e-video");
+
+        String encoded = VideoService.encodeCursor(cursor);
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(VideoService.decodeCursor(encoded)).isEqualTo(cursor);
+    }
+
+    @Test
+    void cursorKeepsCommasInId() {
+        VideoCursor cursor = new VideoCursor(Instant.parse("2026-03-01T12:30:45Z"), "a,b");
+
+        assertThat(VideoService.decodeCursor(VideoService.encodeCursor(cursor))).isEqualTo(cursor);
+    }
+
+    @Test
+    void missingCursorStartsFromFirstPage() {
+        assertThat(VideoService.decodeCursor(null)).isNull();
+        assertThat(VideoService.decodeCursor(" ")).isNull();
+    }
+
+    @Test
+    void rejectsInvalidCursor() {
+        assertThatThrownBy(() -> VideoService.decodeCursor("not base64!"))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> VideoService.decodeCursor(encode("no-comma")))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> VideoService.decodeCursor(encode("yesterday,abc")))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    private static String encode(String decoded) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,108 @@
+package com.exentricdev.clipshare.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VideoStreamServiceTests {
+    private static final String ETAG = "\"a-18f\"";
+    // Sun, 06 Nov 1994 08:49:37 GMT
+    private static final long LAST_MODIFIED = 784111777_000L;
+    private static final long LENGTH = 1000;
+
+    @Test
+    void sendsFullEntityWithoutRange() {
+        assertThat(resolve(new MockHttpServletRequest())).isNull();
+    }
+
+    @Test
+    void resolvesSingleRange() {
+        assertThat(resolve(withRange("bytes=0-99"))).containsExactly(new long[]{0, 99});
+    }
+
+    @Test
+    void resolvesOpenAndSuffixRanges() {
+        assertThat(resolve(withRange("bytes=900-"))).containsExactly(new long[]{900, 999});
+        assertThat(resolve(withRange("bytes=-100"))).containsExactly(new long[]{900, 999});
+    }
+
+    @Test
+    void clampsEndToLength() {
+        assertThat(resolve(withRange("bytes=500-5000"))).containsExactly(new long[]{500, 999});
+    }
+
+    @Test
+    void resolvesMultipleRanges() {
+        assertThat(resolve(withRange("bytes=0-9,20-29"))).containsExactly(new long[]{0, 9}, new long[]{20, 29});
+    }
+
+    @Test
+    void skipsUnsatisfiableRanges() {
+        assertThat(resolve(withRange("bytes=0-9,2000-2999"))).containsExactly(new long[]{0, 9});
+        assertThat(resolve(withRange("bytes=1000-1999"))).isEmpty();
+    }
+
+    @Test
+    void ignoresMalformedRange() {
+        assertThat(resolve(withRange("bytes=abc"))).isNull();
+        assertThat(resolve(withRange("items=0-9"))).isNull();
+    }
+
+    @Test
+    void ignoresTooManyRanges() {
+        String ranges = String.join(",", Collections.nCopies(17, "0-0"));
+
+        assertThat(resolve(withRange("bytes=" + ranges))).isNull();
+    }
+
+    @Test
+    void honoursRangeWhenIfRangeMatchesEtag() {
+        MockHttpServletRequest request = withRange("bytes=0-99");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+
+        assertThat(resolve(request)).containsExactly(new long[]{0, 99});
+    }
+
+    @Test
+    void sendsFullEntityWhenIfRangeEtagDiffers() {
+        MockHttpServletRequest changed = withRange("bytes=0-99");
+        changed.addHeader(HttpHeaders.IF_RANGE, "\"b-18f\"");
+
+        MockHttpServletRequest weak = withRange("bytes=0-99");
+        weak.addHeader(HttpHeaders.IF_RANGE, "W/" + ETAG);
+
+        assertThat(resolve(changed)).isNull();
+        assertThat(resolve(weak)).isNull();
+    }
+
+    @Test
+    void comparesIfRangeDateToLastModified() {
+        MockHttpServletRequest unchanged = withRange("bytes=0-99");
+        unchanged.addHeader(HttpHeaders.IF_RANGE, "Sun, 06 Nov 1994 08:49:37 GMT");
+
+        MockHttpServletRequest older = withRange("bytes=0-99");
+        older.addHeader(HttpHeaders.IF_RANGE, "Sun, 06 Nov 1994 08:49:36 GMT");
+
+        MockHttpServletRequest invalid = withRange("bytes=0-99");
+        invalid.addHeader(HttpHeaders.IF_RANGE, "yesterday");
+
+        assertThat(resolve(unchanged)).containsExactly(new long[]{0, 99});
+        assertThat(resolve(older)).isNull();
+        assertThat(resolve(invalid)).isNull();
+    }
+
+    private static MockHttpServletRequest withRange(String range) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, range);
+        return request;
+    }
+
+    private static List<long[]> resolve(MockHttpServletRequest request) {
+        return VideoStreamService.resolveRanges(request, ETAG, LAST_MODIFIED, LENGTH);
+    }
+}
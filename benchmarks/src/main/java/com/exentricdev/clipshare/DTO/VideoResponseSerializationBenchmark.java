@@ -0,0 +1,74 @@
+package com.exentricdev.clipshare.DTO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of large video listings, as written by the message converter for
+ * {@code GET /api/videos}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VideoResponseSerializationBenchmark {
+
+    @Param({"10000", "100000"})
+    int rows;
+
+    JsonMapper jsonMapper;
+    VideoPage page;
+
+    @Setup
+    public void setUp() {
+        jsonMapper = JsonMapper.builder().build();
+
+        Instant now = Instant.now();
+        List<VideoResponse> items = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+            items.add(new VideoResponse(
+                    UUID.randomUUID().toString().replace("-", ""),
+                    "Clip number " + i,
+                    50_000_000L + i,
+                    true,
+                    i % 2 == 0 ? "mp4" : "hls",
+                    now.minusSeconds(i),
+                    i % 3 != 0,
+                    i * 37L
+            ));
+        }
+
+        page = new VideoPage(items, "MjAyNi0xMC0xN1QxMjowMDowMFosYWJj");
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return jsonMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public void toStream() {
+        // Closer to the servlet path, which writes straight to the response stream
+        jsonMapper.writeValue(OutputStream.nullOutputStream(), page);
+    }
+}
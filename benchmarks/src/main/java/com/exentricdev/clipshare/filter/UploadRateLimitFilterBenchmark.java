@@ -0,0 +1,164 @@
+package com.exentricdev.clipshare.filter;
+
+import com.exentricdev.clipshare.repository.UploadTokenRepository;
+import com.exentricdev.clipshare.service.UploadRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Upload requests from many users hitting the rate limit filter concurrently. Most requests
+ * are rejected once each user's bucket is drained, which is the steady state under abuse.
+ * The shared buckets live in memory behind a simulated database round trip, so the numbers
+ * show how often a request still has to wait for the store.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class UploadRateLimitFilterBenchmark {
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> {
+    };
+
+    @State(Scope.Benchmark)
+    public static class FilterState {
+        // A single user shows contention on one bucket
+        @Param({"1", "100", "10000"})
+        int users;
+
+        @Param({"0", "500"})
+        long storeLatencyMicros;
+
+        UploadRateLimitFilter filter;
+        Authentication[] authentications;
+
+        @Setup
+        public void setUp() {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            UploadRateLimiter limiter = new UploadRateLimiter(new InMemoryTokenRepository(storeLatencyMicros),
+                    meterRegistry, 3, Duration.ofMinutes(1), 2, Duration.ofSeconds(10));
+
+            filter = new UploadRateLimitFilter(limiter, meterRegistry);
+            authentications = new Authentication[users];
+
+            for (int i = 0; i < users; i++) {
+                authentications[i] = new TestingAuthenticationToken("user-" + i, null, "ROLE_USER");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+        MockHttpServletRequest uploadRequest;
+        MockHttpServletRequest listRequest;
+        MockHttpServletResponse response;
+
+        @Setup
+        public void setUp() {
+            uploadRequest = new MockHttpServletRequest("POST", "/api/videos");
+            listRequest = new MockHttpServletRequest("GET", "/api/videos");
+            response = new MockHttpServletResponse();
+        }
+
+        @TearDown
+        public void tearDown() {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Benchmark
+    public int upload(FilterState state, RequestState requestState) throws Exception {
+        Authentication authentication = state.authentications[ThreadLocalRandom.current().nextInt(state.users)];
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        // Rejected requests write a body, reset so it does not accumulate across invocations
+        requestState.response.reset();
+        state.filter.doFilterInternal(requestState.uploadRequest, requestState.response, NO_OP_CHAIN);
+
+        return requestState.response.getStatus();
+    }
+
+    @Benchmark
+    public int nonUpload(FilterState state, RequestState requestState) throws Exception {
+        requestState.response.reset();
+        state.filter.doFilterInternal(requestState.listRequest, requestState.response, NO_OP_CHAIN);
+
+        return requestState.response.getStatus();
+    }
+
+    // The buckets of UploadTokenRepository without Postgres, each call paying the given latency
+    static class InMemoryTokenRepository extends UploadTokenRepository {
+        private final long latencyNanos;
+        private final Map<String, double[]> buckets = new ConcurrentHashMap<>();
+
+        InMemoryTokenRepository(long latencyMicros) {
+            super(null, null);
+            this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        }
+
+        @Override
+        public int reserve(String userId, int capacity, double refillPerSecond, int max) {
+            roundTrip();
+            double[] bucket = buckets.computeIfAbsent(userId, id -> new double[]{capacity, System.nanoTime()});
+
+            synchronized (bucket) {
+                long now = System.nanoTime();
+                double available = Math.min(capacity, bucket[0] + (now - bucket[1]) / 1e9 * refillPerSecond);
+                int reserved = (int) Math.min(Math.floor(available), max);
+                bucket[0] = available - reserved;
+                bucket[1] = now;
+                return reserved;
+            }
+        }
+
+        @Override
+        public void release(String userId, int capacity, int tokens) {
+            roundTrip();
+            double[] bucket = buckets.get(userId);
+
+            if (bucket != null) {
+                synchronized (bucket) {
+                    bucket[0] = Math.min(capacity, bucket[0] + tokens);
+                }
+            }
+        }
+
+        @Override
+        public int deleteIdleSince(Instant before) {
+            return 0;
+        }
+
+        private void roundTrip() {
+            if (latencyNanos > 0) {
+                LockSupport.parkNanos(latencyNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.exentricdev.clipshare.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The feed listing of {@link VideoRepository#findFirstPage} and {@link VideoRepository#findPageAfter}
+ * against a million videos in Postgres, next to the OFFSET query the keyset replaced. The
+ * repository queries are JPQL, so the SQL below is what Hibernate generates for them and has to
+ * follow any change to the repository. Uses the same scratch database as {@link VideoSearchBenchmark}:
+ * <pre>
+ * java -Dbenchmark.jdbc-url=jdbc:postgresql://localhost:5432/clipshare_bench \
+ *     -Dbenchmark.jdbc-user=user -Dbenchmark.jdbc-password=pass -jar target/benchmarks.jar VideoPagination
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VideoPaginationBenchmark {
+    private static final int PAGE_SIZE = 24;
+
+    private static final String SELECT = """
+            SELECT v.id, v.title, v.size, v.is_processed, v.stream_format, v.uploaded_at,
+                   CASE WHEN v.artwork_path IS NOT NULL THEN true ELSE false END,
+                   coalesce((SELECT c.view_count FROM video_view_count c WHERE c.video_id = v.id), 0)
+            FROM video v
+            """;
+
+    private static final String FIRST_PAGE = SELECT + """
+            ORDER BY v.uploaded_at DESC, v.id DESC
+            FETCH FIRST ? ROWS ONLY
+            """;
+
+    private static final String PAGE_AFTER = SELECT + """
+            WHERE v.uploaded_at < ? OR (v.uploaded_at = ? AND v.id < ?)
+            ORDER BY v.uploaded_at DESC, v.id DESC
+            FETCH FIRST ? ROWS ONLY
+            """;
+
+    private static final String PAGE_AT_OFFSET = SELECT + """
+            ORDER BY v.uploaded_at DESC, v.id DESC
+            OFFSET ? ROWS FETCH FIRST ? ROWS ONLY
+            """;
+
+    // How deep the page reached by scrolling is
+    @Param({"2", "100", "10000"})
+    int page;
+
+    Connection connection;
+    PreparedStatement firstPage;
+    PreparedStatement pageAfter;
+    PreparedStatement pageAtOffset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        connection = VideoSeed.connect();
+        int skipped = (page - 1) * PAGE_SIZE;
+
+        firstPage = connection.prepareStatement(FIRST_PAGE);
+        firstPage.setInt(1, PAGE_SIZE + 1);
+
+        pageAtOffset = connection.prepareStatement(PAGE_AT_OFFSET);
+        pageAtOffset.setInt(1, skipped);
+        pageAtOffset.setInt(2, PAGE_SIZE + 1);
+
+        // The cursor of the page is the last video of the page before it
+        Timestamp uploadedAt;
+        String id;
+
+        try (PreparedStatement last = connection.prepareStatement(PAGE_AT_OFFSET)) {
+            last.setInt(1, skipped - 1);
+            last.setInt(2, 1);
+
+            try (ResultSet video = last.executeQuery()) {
+                if (!video.next()) {
+                    throw new IllegalStateException("Fewer than " + page + " pages of videos");
+                }
+
+                id = video.getString("id");
+                uploadedAt = video.getTimestamp("uploaded_at");
+            }
+        }
+
+        pageAfter = connection.prepareStatement(PAGE_AFTER);
+        pageAfter.setTimestamp(1, uploadedAt);
+        pageAfter.setTimestamp(2, uploadedAt);
+        pageAfter.setString(3, id);
+        pageAfter.setInt(4, PAGE_SIZE + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int firstPage() throws SQLException {
+        return count(firstPage);
+    }
+
+    @Benchmark
+    public int pageAfter() throws SQLException {
+        return count(pageAfter);
+    }
+
+    @Benchmark
+    public int pageAtOffset() throws SQLException {
+        return count(pageAtOffset);
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        int count = 0;
+
+        try (ResultSet videos = statement.executeQuery()) {
+            while (videos.next()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
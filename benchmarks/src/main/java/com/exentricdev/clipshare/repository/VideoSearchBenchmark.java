@@ -0,0 +1,146 @@
+package com.exentricdev.clipshare.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.jpa.repository.Query;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The title search queries of {@link VideoRepository} against a million videos in Postgres.
+ * The SQL is read from the repository's annotations, so the numbers always reflect what the
+ * backend runs. Needs a scratch database, migrated and filled on the first run:
+ * <pre>
+ * java -Dbenchmark.jdbc-url=jdbc:postgresql://localhost:5432/clipshare_bench \
+ *     -Dbenchmark.jdbc-user=user -Dbenchmark.jdbc-password=pass -jar target/benchmarks.jar VideoSearch
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VideoSearchBenchmark {
+    private static final Pattern NAMED_PARAMETER = Pattern.compile("(?<!:):(\\w+)");
+
+    private static final int PAGE_SIZE = 24;
+
+    // A whole word, a misspelling caught only by trigrams, and two words
+    @Param({"holiday", "holliday", "cat skate"})
+    String term;
+
+    Connection connection;
+    RepositoryQuery firstPage;
+    RepositoryQuery pageAfter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        connection = VideoSeed.connect();
+
+        firstPage = prepare("searchFirstPage").bind("term", term).bind("limit", PAGE_SIZE + 1);
+
+        // The fifth page starts after the last hit of the fourth
+        String lastId = null;
+        double lastScore = 0;
+
+        RepositoryQuery fourPages = prepare("searchFirstPage").bind("term", term).bind("limit", 4 * PAGE_SIZE);
+        try (ResultSet hits = fourPages.statement().executeQuery()) {
+            while (hits.next()) {
+                lastId = hits.getString("id");
+                lastScore = hits.getDouble("score");
+            }
+        }
+        fourPages.statement().close();
+
+        if (lastId == null) {
+            throw new IllegalStateException("No videos match " + term);
+        }
+
+        pageAfter = prepare("searchPageAfter")
+                .bind("term", term)
+                .bind("score", lastScore)
+                .bind("id", lastId)
+                .bind("limit", PAGE_SIZE + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int firstPage() throws SQLException {
+        return count(firstPage.statement());
+    }
+
+    @Benchmark
+    public int fifthPage() throws SQLException {
+        return count(pageAfter.statement());
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        int count = 0;
+
+        try (ResultSet hits = statement.executeQuery()) {
+            while (hits.next()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private RepositoryQuery prepare(String methodName) throws SQLException {
+        Method method = Arrays.stream(VideoRepository.class.getMethods())
+                .filter(candidate -> candidate.getName().equals(methodName))
+                .findFirst()
+                .orElseThrow();
+
+        // Spring Data binds by name, JDBC by position
+        List<String> names = new ArrayList<>();
+        Matcher matcher = NAMED_PARAMETER.matcher(method.getAnnotation(Query.class).value());
+        StringBuilder sql = new StringBuilder();
+
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+            matcher.appendReplacement(sql, "?");
+        }
+        matcher.appendTail(sql);
+
+        return new RepositoryQuery(connection.prepareStatement(sql.toString()), names);
+    }
+
+    private record RepositoryQuery(PreparedStatement statement, List<String> names) {
+        RepositoryQuery bind(String name, Object value) throws SQLException {
+            for (int i = 0; i < names.size(); i++) {
+                if (names.get(i).equals(name)) {
+                    statement.setObject(i + 1, value);
+                }
+            }
+
+            return this;
+        }
+    }
+}
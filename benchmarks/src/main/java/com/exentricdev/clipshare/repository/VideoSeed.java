@@ -0,0 +1,63 @@
+package com.exentricdev.clipshare.repository;
+
+import org.flywaydb.core.Flyway;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The scratch database the repository benchmarks share, migrated with the backend's own
+ * migrations and filled with a million videos on the first run.
+ */
+final class VideoSeed {
+    static final int ROWS = 1_000_000;
+
+    private VideoSeed() {
+    }
+
+    static Connection connect() throws SQLException {
+        String url = System.getProperty("benchmark.jdbc-url", "jdbc:postgresql://localhost:5432/clipshare_bench");
+        String user = System.getProperty("benchmark.jdbc-user", "user");
+        String password = System.getProperty("benchmark.jdbc-password", "pass");
+
+        Flyway.configure().dataSource(url, user, password).locations("classpath:db/migration").load().migrate();
+        Connection connection = DriverManager.getConnection(url, user, password);
+        seed(connection);
+
+        return connection;
+    }
+
+    // Titles of two to four words drawn from a small vocabulary, so common words match many rows,
+    // one upload a minute from 5000 uploaders
+    private static void seed(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet existing = statement.executeQuery("SELECT count(*) FROM video")) {
+                existing.next();
+
+                if (existing.getLong(1) >= ROWS) {
+                    return;
+                }
+            }
+
+            statement.execute("SELECT setseed(0.42)");
+            statement.execute("""
+                    INSERT INTO video (id, uploader_id, title, is_processed, stored_file_name, size, content_type, uploaded_at)
+                    SELECT md5(i::text), 'user-' || (i %% 5000), t.title, true, md5(i::text) || '.mp4', 1048576, 'video/mp4',
+                           now() - i * interval '1 minute'
+                    FROM generate_series(1, %d) i
+                    CROSS JOIN LATERAL (
+                        SELECT string_agg(words[1 + floor(random() * array_length(words, 1))::int], ' ') AS title
+                        FROM (SELECT ARRAY['holiday', 'cat', 'skate', 'beach', 'birthday', 'concert', 'sunset', 'dog',
+                                           'drone', 'tutorial', 'gaming', 'wedding', 'hike', 'city', 'night', 'snow',
+                                           'recipe', 'guitar', 'race', 'timelapse'] AS words) w,
+                             generate_series(1, 2 + i %% 3) n
+                    ) t
+                    ON CONFLICT (id) DO NOTHING
+                    """.formatted(ROWS));
+            statement.execute("ANALYZE video");
+        }
+    }
+}
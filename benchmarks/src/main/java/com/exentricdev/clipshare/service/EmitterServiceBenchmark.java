@@ -0,0 +1,93 @@
+package com.exentricdev.clipshare.service;
+
+import com.exentricdev.clipshare.DTO.TranscodeProgress;
+import com.exentricdev.clipshare.DTO.UserEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local delivery of one event to every connection of a user, the per-node half of
+ * {@link EmitterService#notifyUser}. Broker publishing is left out so the numbers only
+ * reflect the fan-out, and message conversion is left out because the emitters are bound
+ * to a no-op handler instead of a servlet response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmitterServiceBenchmark {
+    private static final String USER_ID = "user-0";
+
+    @Param({"10", "1000", "5000"})
+    int emitters;
+
+    EmitterService emitterService;
+    UserEvent processedEvent;
+    UserEvent progressEvent;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws ReflectiveOperationException {
+        emitterService = new EmitterService(new RabbitTemplate(), new SimpleMeterRegistry(), 50, Duration.ofMinutes(10), 10_000);
+
+        // Emitters queue everything sent before they are bound to a response, bind them to a sink instead
+        Class<?> handlerType = Class.forName(ResponseBodyEmitter.class.getName() + "$Handler");
+        Method initialize = ResponseBodyEmitter.class.getDeclaredMethod("initialize", handlerType);
+        initialize.setAccessible(true);
+
+        for (int i = 0; i < emitters; i++) {
+            SseEmitter emitter = emitterService.createEmitterForUser(USER_ID, null);
+            initialize.invoke(emitter, sink(handlerType, blackhole));
+        }
+
+        processedEvent = new UserEvent("1-bench-1", USER_ID, "video-processed", "{\"id\":\"abc\"}");
+        progressEvent = new UserEvent("1-bench-2", USER_ID, "video-progress",
+                new TranscodeProgress("abc", USER_ID, 42.0, 60.0, 1.5, 30L));
+    }
+
+    @Benchmark
+    public void deliverBuffered() {
+        emitterService.deliverLocally(processedEvent);
+    }
+
+    @Benchmark
+    public void deliverTransient() {
+        emitterService.deliverLocally(progressEvent);
+    }
+
+    private static Object sink(Class<?> handlerType, Blackhole blackhole) {
+        return Proxy.newProxyInstance(handlerType.getClassLoader(), new Class<?>[]{handlerType}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "SinkHandler";
+                default:
+                    blackhole.consume(args);
+                    return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package com.exentricdev.clipshare.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extension and title extraction done for every upload in {@link VideoService}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileNameParsingBenchmark {
+
+    @Param({
+            "clip.mp4",
+            "My Holiday Video 2026 - Final Cut (1080p).MOV",
+            "a.very.long.name.with.many.dots.that.goes.on.and.on.past.the.title.limit.of.seventy.five.characters.mkv",
+            "no-extension"
+    })
+    String fileName;
+
+    @Benchmark
+    public String extension() {
+        return VideoService.getFileExtension(fileName);
+    }
+
+    @Benchmark
+    public String title() {
+        return VideoService.getFileTitle(fileName);
+    }
+}
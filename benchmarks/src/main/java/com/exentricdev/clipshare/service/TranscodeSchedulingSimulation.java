@@ -0,0 +1,204 @@
+package com.exentricdev.clipshare.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * Discrete-event simulation of the transcoder fleet under a mixed workload, comparing a FIFO
+ * queue with the priorities chosen by {@link TranscodeScheduler}. Many casual uploaders post
+ * short clips now and then while a few heavy uploaders keep the fleet busy with long videos.
+ * As in {@link VideoService}, an uploader can only have one video waiting to be processed.
+ *
+ * <p>Prints p50/p99 time-to-playable, from upload to transcode finished, in simulated seconds:
+ * <pre>
+ * java -cp target/benchmarks.jar com.exentricdev.clipshare.service.TranscodeSchedulingSimulation
+ * </pre>
+ */
+public class TranscodeSchedulingSimulation {
+    private static final long MB = 1024 * 1024;
+
+    private static final int SLOTS = 4;
+    private static final int CASUAL_UPLOADERS = 40;
+    private static final int HEAVY_UPLOADERS = 4;
+
+    // Transcode speed of a single slot
+    private static final double BYTES_PER_SECOND = 0.5 * MB;
+
+    private static final double CASUAL_THINK_SECONDS = 600;
+    private static final double HEAVY_THINK_SECONDS = 30;
+
+    private static final double WARMUP_SECONDS = 3600;
+    private static final double DURATION_SECONDS = 9 * 3600;
+
+    // Defaults of app.transcode.*
+    private static final long[] SIZE_TIERS = {20 * MB, 100 * MB, 300 * MB};
+    private static final long FAIR_SHARE = 200 * MB;
+    private static final double FAIR_WINDOW_SECONDS = 3600;
+
+    private static final long SHORT_CLIP = 100 * MB;
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+
+        System.out.printf("%-10s %-8s %8s %10s %10s%n", "policy", "jobs", "count", "p50 (s)", "p99 (s)");
+        for (boolean prioritized : new boolean[]{false, true}) {
+            List<Job> finished = new Simulation(prioritized, new Random(seed)).run();
+
+            report(prioritized ? "priority" : "fifo", "all", finished, job -> true);
+            report(prioritized ? "priority" : "fifo", "short", finished, job -> job.size <= SHORT_CLIP);
+            report(prioritized ? "priority" : "fifo", "long", finished, job -> job.size > SHORT_CLIP);
+        }
+    }
+
+    private static void report(String policy, String label, List<Job> jobs, Predicate<Job> filter) {
+        double[] latencies = jobs.stream()
+                .filter(filter)
+                .mapToDouble(job -> job.finishedAt - job.uploadedAt)
+                .sorted()
+                .toArray();
+
+        System.out.printf("%-10s %-8s %8d %10.1f %10.1f%n",
+                policy, label, latencies.length, percentile(latencies, 0.50), percentile(latencies, 0.99));
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static final class Job {
+        final Uploader uploader;
+        final long size;
+        final double uploadedAt;
+        final long sequence;
+        int priority;
+        double finishedAt;
+
+        Job(Uploader uploader, long size, double uploadedAt, long sequence) {
+            this.uploader = uploader;
+            this.size = size;
+            this.uploadedAt = uploadedAt;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Uploader {
+        final boolean heavy;
+        final Deque<Job> history = new ArrayDeque<>();
+
+        Uploader(boolean heavy) {
+            this.heavy = heavy;
+        }
+
+        long bytesSince(double since) {
+            while (!history.isEmpty() && history.peekFirst().uploadedAt < since) {
+                history.removeFirst();
+            }
+
+            return history.stream().mapToLong(job -> job.size).sum();
+        }
+    }
+
+    private record Event(double time, long sequence, Runnable action) {
+    }
+
+    private static final class Simulation {
+        private final boolean prioritized;
+        private final Random random;
+        private final PriorityQueue<Event> events = new PriorityQueue<>(
+                Comparator.comparingDouble(Event::time).thenComparingLong(Event::sequence));
+        private final PriorityQueue<Job> queue;
+        private final List<Job> finished = new ArrayList<>();
+
+        private double now;
+        private long sequence;
+        private int idleSlots = SLOTS;
+
+        Simulation(boolean prioritized, Random random) {
+            this.prioritized = prioritized;
+            this.random = random;
+
+            // Highest priority first, FIFO within a priority level, as RabbitMQ delivers them
+            Comparator<Job> fifo = Comparator.comparingLong(job -> job.sequence);
+            this.queue = new PriorityQueue<>(prioritized
+                    ? Comparator.<Job>comparingInt(job -> -job.priority).thenComparing(fifo)
+                    : fifo);
+        }
+
+        List<Job> run() {
+            for (int i = 0; i < CASUAL_UPLOADERS + HEAVY_UPLOADERS; i++) {
+                Uploader uploader = new Uploader(i >= CASUAL_UPLOADERS);
+                schedule(exponential(uploader.heavy ? HEAVY_THINK_SECONDS : CASUAL_THINK_SECONDS), () -> upload(uploader));
+            }
+
+            while (!events.isEmpty() && events.peek().time() <= DURATION_SECONDS) {
+                Event event = events.poll();
+                now = event.time();
+                event.action().run();
+            }
+
+            return finished;
+        }
+
+        private void upload(Uploader uploader) {
+            Job job = new Job(uploader, sizeFor(uploader), now, sequence++);
+
+            long recentBytes = uploader.bytesSince(now - FAIR_WINDOW_SECONDS);
+            job.priority = TranscodeScheduler.priority(job.size, recentBytes, SIZE_TIERS, FAIR_SHARE);
+            uploader.history.addLast(job);
+
+            queue.add(job);
+            dispatch();
+        }
+
+        private void dispatch() {
+            while (idleSlots > 0 && !queue.isEmpty()) {
+                Job job = queue.poll();
+                idleSlots--;
+
+                schedule(job.size / BYTES_PER_SECOND, () -> finish(job));
+            }
+        }
+
+        private void finish(Job job) {
+            job.finishedAt = now;
+            idleSlots++;
+
+            if (job.uploadedAt >= WARMUP_SECONDS) {
+                finished.add(job);
+            }
+
+            // The uploader may only upload again once their previous video is processed
+            Uploader uploader = job.uploader;
+            schedule(exponential(uploader.heavy ? HEAVY_THINK_SECONDS : CASUAL_THINK_SECONDS), () -> upload(uploader));
+
+            dispatch();
+        }
+
+        private long sizeFor(Uploader uploader) {
+            if (uploader.heavy) {
+                return (150 + random.nextInt(150)) * MB;
+            }
+
+            // Mostly short clips with the occasional longer one
+            return Math.min(300 * MB, (long) (exponential(25) * MB) + MB);
+        }
+
+        private double exponential(double mean) {
+            return -mean * Math.log(1 - random.nextDouble());
+        }
+
+        private void schedule(double delay, Runnable action) {
+            events.add(new Event(now + delay, sequence++, action));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.exentricdev.clipshare.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test against a running backend: many slow uploads at once, while readers keep listing
+ * videos. Metadata reads should stay fast however many uploads are in flight, as no upload
+ * holds a database connection or a platform thread while its bytes trickle in or are stored.
+ *
+ * <p>Each line of the tokens file is an access token of a different user, since a user can only
+ * have one video processing at a time. Every user uploads one file of zeros, throttled to a
+ * slow client's speed. Prints p50/p99 read latency before and during the uploads:
+ * <pre>
+ * java -Dupload.size=20971520 -Dupload.rate=131072 -Dreaders=20 \
+ *     -cp target/benchmarks.jar com.exentricdev.clipshare.service.UploadLoadTest http://localhost:8080 tokens.txt
+ * </pre>
+ */
+public class UploadLoadTest {
+    private static final String BOUNDARY = "clipshare-load-test";
+
+    private static final long UPLOAD_SIZE = Long.getLong("upload.size", 20L * 1024 * 1024);
+    private static final long UPLOAD_RATE = Long.getLong("upload.rate", 128L * 1024);
+    private static final int READERS = Integer.getInteger("readers", 20);
+    private static final Duration BASELINE = Duration.ofSeconds(Long.getLong("baseline.seconds", 20));
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: UploadLoadTest <base-url> <tokens-file>");
+            System.exit(1);
+        }
+
+        URI baseUrl = URI.create(args[0]);
+        List<String> tokens = Files.readAllLines(Path.of(args[1])).stream()
+                .map(String::trim)
+                .filter(token -> !token.isEmpty())
+                .toList();
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        System.out.printf("%-10s %8s %8s %10s %10s%n", "phase", "reads", "errors", "p50 (ms)", "p99 (ms)");
+
+        Readers baseline = Readers.start(client, baseUrl);
+        Thread.sleep(BASELINE.toMillis());
+        baseline.stop().report("baseline");
+
+        Readers underLoad = Readers.start(client, baseUrl);
+        AtomicInteger stored = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long startedAt = System.nanoTime();
+
+        try (ExecutorService uploaders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String token : tokens) {
+                uploaders.submit(() -> {
+                    try {
+                        int status = upload(client, baseUrl, token);
+                        (status / 100 == 2 ? stored : failed).incrementAndGet();
+
+                        if (status / 100 != 2) {
+                            System.err.println("Upload failed with status " + status);
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        failed.incrementAndGet();
+                        System.err.println("Upload failed: " + e.getMessage());
+                    }
+                });
+            }
+        }
+
+        underLoad.stop().report("uploads");
+        System.out.printf("%d uploads stored, %d failed, in %ds%n",
+                stored.get(), failed.get(), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedAt));
+    }
+
+    private static int upload(HttpClient client, URI baseUrl, String token) throws IOException, InterruptedException {
+        byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"load-test.mp4\"\r\n"
+                + "Content-Type: video/mp4\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        HttpRequest request = HttpRequest.newBuilder(baseUrl.resolve("/api/videos"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() -> new ThrottledBody(head, UPLOAD_SIZE, tail, UPLOAD_RATE)),
+                        head.length + UPLOAD_SIZE + tail.length))
+                .build();
+
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * Readers listing the first page of videos in a loop, the request every visitor makes.
+     */
+    private static final class Readers {
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        static Readers start(HttpClient client, URI baseUrl) {
+            Readers readers = new Readers();
+            HttpRequest request = HttpRequest.newBuilder(baseUrl.resolve("/api/videos"))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+
+            for (int i = 0; i < READERS; i++) {
+                readers.executor.submit(() -> {
+                    while (readers.running.get()) {
+                        long startedAt = System.nanoTime();
+
+                        try {
+                            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+
+                            if (status == 200) {
+                                readers.latencies.add(System.nanoTime() - startedAt);
+                            } else {
+                                readers.errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            readers.errors.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+            }
+
+            return readers;
+        }
+
+        Readers stop() {
+            running.set(false);
+            executor.close();
+            return this;
+        }
+
+        void report(String phase) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+
+            System.out.printf("%-10s %8d %8d %10.1f %10.1f%n",
+                    phase, sorted.length, errors.get(), percentile(sorted, 0.50), percentile(sorted, 0.99));
+        }
+    }
+
+    /**
+     * A multipart body whose file part is sent no faster than {@code bytesPerSecond}.
+     */
+    private static final class ThrottledBody extends InputStream {
+        private final byte[] head;
+        private final long size;
+        private final byte[] tail;
+        private final long bytesPerSecond;
+        private final long startedAt = System.nanoTime();
+
+        private long position;
+
+        ThrottledBody(byte[] head, long size, byte[] tail, long bytesPerSecond) {
+            this.head = head;
+            this.size = size;
+            this.tail = tail;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long total = head.length + size + tail.length;
+
+            if (position >= total) {
+                return -1;
+            }
+
+            if (position < head.length) {
+                int count = (int) Math.min(length, head.length - position);
+                System.arraycopy(head, (int) position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+
+            if (position >= head.length + size) {
+                int tailPosition = (int) (position - head.length - size);
+                int count = Math.min(length, tail.length - tailPosition);
+                System.arraycopy(tail, tailPosition, buffer, offset, count);
+                position += count;
+                return count;
+            }
+
+            // Wait until the file part sent so far is within the allowed rate
+            long sent = position - head.length;
+            long dueAt = startedAt + sent * 1_000_000_000L / bytesPerSecond;
+            long waitNanos = dueAt - System.nanoTime();
+
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling", e);
+                }
+            }
+
+            int count = (int) Math.min(Math.min(length, 16 * 1024), head.length + size - position);
+            Arrays.fill(buffer, offset, offset + count, (byte) 0);
+            position += count;
+            return count;
+        }
+    }
+}
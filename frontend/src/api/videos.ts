@@ -1,24 +1,74 @@
-import type { VideoUploadResponse } from "../types/video.types";
+import type { VideoPage, VideoUploadResponse } from "../types/video.types";
 import apiClient from "./axiosInstance";
 
 export interface VideoPatchRequest {
   title?: string;
 }
 
+interface UploadSessionResponse {
+  id: string;
+  offset: number;
+  size: number;
+}
+
+const UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+const MAX_CHUNK_RETRIES = 5;
+
+// Uploads the file in chunks through a resumable upload session. A failed chunk
+// is retried from the offset the server reports, so a dropped connection only
+// costs the chunk that was in flight.
 export const uploadFile = async (file: File): Promise<VideoUploadResponse> => {
-  const formData = new FormData();
-  formData.append("file", file);
+  const session = await apiClient.post<UploadSessionResponse>(
+    "/videos/uploads",
+    {
+      fileName: file.name,
+      contentType: file.type,
+      size: file.size,
+    }
+  );
+
+  const sessionId = session.data.id;
+  let offset = session.data.offset;
+  let retries = 0;
+
+  while (offset < file.size) {
+    const chunk = file.slice(offset, offset + UPLOAD_CHUNK_SIZE);
+
+    try {
+      const response = await apiClient.put<UploadSessionResponse>(
+        `/videos/uploads/${sessionId}`,
+        chunk,
+        {
+          params: { offset },
+          headers: { "Content-Type": "application/octet-stream" },
+        }
+      );
+
+      offset = response.data.offset;
+      retries = 0;
+    } catch (error) {
+      if (++retries > MAX_CHUNK_RETRIES) {
+        throw error;
+      }
+
+      const status = await apiClient.get<UploadSessionResponse>(
+        `/videos/uploads/${sessionId}`
+      );
+      offset = status.data.offset;
+    }
+  }
 
   const response = await apiClient.post<VideoUploadResponse>(
-    "/videos",
-    formData
+    `/videos/uploads/${sessionId}/complete`
   );
 
   return response.data;
 };
 
-export const fetchVideos = async (): Promise<VideoUploadResponse[]> => {
-  const response = await apiClient.get("/videos/my-videos");
+export const fetchVideos = async (cursor?: string): Promise<VideoPage> => {
+  const response = await apiClient.get<VideoPage>("/videos/my-videos", {
+    params: { cursor },
+  });
   return response.data;
 };
 
@@ -26,6 +76,10 @@ export const getVideoStreamUrl = (id: string): string => {
   return `${apiClient.defaults.baseURL}/videos/${id}`;
 };
 
+export const getArtworkUrl = (id: string, file: string): string => {
+  return `${apiClient.defaults.baseURL}/videos/${id}/artwork/${file}`;
+};
+
 export const deleteVideo = async (id: string): Promise<void> => {
   await apiClient.delete(`/videos/${id}`);
 };
@@ -7,8 +7,10 @@ import { AxiosError } from "axios";
 export interface VideoCardProps {
   videoId: string;
   videoUrl: string;
+  thumbnailUrl?: string;
   title: string;
   processed: boolean;
+  progress?: number;
   onTitleChange?: (value: string) => void;
   onDelete?: () => void;
 }
@@ -16,8 +18,10 @@ export interface VideoCardProps {
 export const VideoCard: React.FC<VideoCardProps> = ({
   videoId,
   videoUrl,
+  thumbnailUrl,
   title,
   processed,
+  progress,
   onTitleChange,
   onDelete,
 }) => {
@@ -113,7 +117,9 @@ export const VideoCard: React.FC<VideoCardProps> = ({
               variant="body1"
               sx={{ color: "white", fontWeight: "bold" }}
             >
-              Processing...
+              {progress !== undefined
+                ? `Processing... ${Math.floor(progress)}%`
+                : "Processing..."}
             </Typography>
           </Box>
         )}
@@ -149,9 +155,11 @@ export const VideoCard: React.FC<VideoCardProps> = ({
               </Box>
             </Box>
             <Box
-              component="video"
-              src={videoUrl}
-              preload="metadata"
+              component={thumbnailUrl ? "img" : "video"}
+              src={thumbnailUrl ?? videoUrl}
+              {...(thumbnailUrl
+                ? { alt: title, loading: "lazy" }
+                : { preload: "metadata" })}
               sx={{
                 position: "absolute",
                 top: 0,
@@ -15,9 +15,17 @@ import { Upload, LogOut, Film } from "lucide-react";
 
 import { blue, grey } from "@mui/material/colors";
 import apiClient from "../api/axiosInstance";
-import { uploadFile, fetchVideos, getVideoStreamUrl } from "../api/videos";
+import {
+  uploadFile,
+  fetchVideos,
+  getVideoStreamUrl,
+  getArtworkUrl,
+} from "../api/videos";
 import VideoCard from "../components/VideoCard";
-import type { VideoUploadResponse } from "../types/video.types";
+import type {
+  TranscodeProgress,
+  VideoUploadResponse,
+} from "../types/video.types";
 import keycloak from "../keycloak";
 import { fetchEventSource } from "@microsoft/fetch-event-source";
 import { AxiosError } from "axios";
@@ -26,6 +34,9 @@ function Home() {
   const [videos, setVideos] = useState<VideoUploadResponse[]>([]);
   const [isUploading, setIsUploading] = useState(false);
   const [isLoadingVideos, setIsLoadingVideos] = useState(true);
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
+  const [isLoadingMore, setIsLoadingMore] = useState(false);
+  const [progress, setProgress] = useState<Record<string, number>>({});
   const [notification, setNotification] = useState<{
     open: boolean;
     message: string;
@@ -58,7 +69,7 @@ function Home() {
       uploadFile(file)
         .then((response: VideoUploadResponse) => {
           console.log("Upload response:", response);
-          setVideos((prevVideos) => [...prevVideos, response]);
+          setVideos((prevVideos) => [response, ...prevVideos]);
           setNotification({
             open: true,
             message: "Video uploaded successfully!",
@@ -103,11 +114,12 @@ function Home() {
   useEffect(() => {
     setIsLoadingVideos(true);
     fetchVideos()
-      .then((fetchedVideos) => {
+      .then((page) => {
         // Log the fetched videos for debugging
-        console.log("Fetched videos:", fetchedVideos);
+        console.log("Fetched videos:", page.items);
 
-        setVideos(fetchedVideos);
+        setVideos(page.items);
+        setNextCursor(page.nextCursor);
       })
       .catch((error) => {
         console.error("Error fetching videos:", error);
@@ -117,6 +129,23 @@ function Home() {
       });
   }, []);
 
+  const loadMoreVideos = () => {
+    if (!nextCursor || isLoadingMore) return;
+
+    setIsLoadingMore(true);
+    fetchVideos(nextCursor)
+      .then((page) => {
+        setVideos((prevVideos) => [...prevVideos, ...page.items]);
+        setNextCursor(page.nextCursor);
+      })
+      .catch((error) => {
+        console.error("Error fetching videos:", error);
+      })
+      .finally(() => {
+        setIsLoadingMore(false);
+      });
+  };
+
   // Listen for server-sent events for new processed videos
   useEffect(() => {
     const abortController = new AbortController();
@@ -137,6 +166,13 @@ function Home() {
           setVideos((prevVideos) =>
             prevVideos.map((v) => (v.id === newVideo.id ? newVideo : v))
           );
+        } else if (event.event === "video-progress") {
+          const update: TranscodeProgress = JSON.parse(event.data);
+
+          setProgress((prevProgress) => ({
+            ...prevProgress,
+            [update.videoId]: update.percent,
+          }));
         }
       },
     });
@@ -310,8 +346,14 @@ function Home() {
                 key={video.id}
                 videoId={video.id}
                 videoUrl={getVideoStreamUrl(video.id.toString())}
+                thumbnailUrl={
+                  video.hasArtwork
+                    ? getArtworkUrl(video.id, "thumb_640.jpg")
+                    : undefined
+                }
                 title={video.title}
                 processed={video.isProcessed}
+                progress={progress[video.id]}
                 onDelete={() => {
                   setVideos((prevVideos) =>
                     prevVideos.filter((v) => v.id !== video.id)
@@ -321,6 +363,16 @@ function Home() {
             ))}
           </Grid>
         )}
+        {nextCursor && !isLoadingVideos && (
+          <Button
+            variant="outlined"
+            onClick={loadMoreVideos}
+            disabled={isLoadingMore}
+            sx={{ mt: 3, textTransform: "none" }}
+          >
+            {isLoadingMore ? "Loading..." : "Load more"}
+          </Button>
+        )}
       </Box>
     </Box>
   );
@@ -3,4 +3,21 @@ export interface VideoUploadResponse {
   title: string;
   size: number;
   isProcessed: boolean;
+  streamFormat: "mp4" | "hls";
+  uploadedAt: string;
+  hasArtwork: boolean;
+  viewCount: number;
+}
+
+export interface VideoPage {
+  items: VideoUploadResponse[];
+  nextCursor: string | null;
+}
+
+export interface TranscodeProgress {
+  videoId: string;
+  percent: number;
+  fps: number;
+  speed: number;
+  etaSeconds: number;
 }
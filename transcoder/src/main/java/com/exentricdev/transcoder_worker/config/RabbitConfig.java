@@ -1,11 +1,19 @@
 package com.exentricdev.transcoder_worker.config;
 
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.JacksonJsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.amqp.autoconfigure.RabbitTemplateCustomizer;
+import org.springframework.boot.amqp.autoconfigure.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.time.Duration;
 
 @Configuration
 public class RabbitConfig {
@@ -14,6 +22,66 @@ public class RabbitConfig {
         return new Queue("processed-videos", true);
     }
 
+    @Bean
+    public Queue videoProgressQueue() {
+        // Progress updates are only useful while fresh, so they are neither durable nor kept around
+        return QueueBuilder.nonDurable("video-progress")
+                .ttl(30000)
+                .build();
+    }
+
+    @Bean
+    public Queue transcodeSegmentsQueue() {
+        return new Queue("transcode-segments", true);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            TranscodeSlots transcodeSlots,
+            @Value("${transcoder.shutdown-timeout:10m}") Duration shutdownTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+
+        // One consumer per slot, each holding at most one unacknowledged job
+        factory.setConcurrentConsumers(transcodeSlots.getSlots());
+        factory.setMaxConcurrentConsumers(transcodeSlots.getSlots());
+        factory.setPrefetchCount(1);
+
+        // Every consumer, and so every ffmpeg process it supervises, gets its own virtual thread
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("transcode-slot-");
+        taskExecutor.setVirtualThreads(true);
+        factory.setTaskExecutor(taskExecutor);
+
+        // Let running jobs finish on shutdown instead of abandoning them
+        factory.setContainerCustomizer(container -> container.setShutdownTimeout(shutdownTimeout.toMillis()));
+        return factory;
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory segmentListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            @Value("${transcoder.segments.consumers:1}") int consumers,
+            @Value("${transcoder.shutdown-timeout:10m}") Duration shutdownTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+
+        // Separate consumers from the job slots, so segments are picked up even while every
+        // slot is busy waiting for the segments of its own job
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(consumers);
+        factory.setPrefetchCount(1);
+
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("transcode-segment-");
+        taskExecutor.setVirtualThreads(true);
+        factory.setTaskExecutor(taskExecutor);
+
+        factory.setContainerCustomizer(container -> container.setShutdownTimeout(shutdownTimeout.toMillis()));
+        return factory;
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new JacksonJsonMessageConverter();
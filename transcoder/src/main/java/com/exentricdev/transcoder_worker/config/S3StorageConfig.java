@@ -0,0 +1,101 @@
+package com.exentricdev.transcoder_worker.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.multipart.MultipartConfiguration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.net.URI;
+
+/**
+ * Clients for the S3-compatible object storage shared with the backend, e.g. MinIO locally.
+ */
+@Configuration
+@ConditionalOnProperty(name = "transcoder.storage.type", havingValue = "s3")
+public class S3StorageConfig {
+    @Value("${transcoder.storage.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${transcoder.storage.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${transcoder.storage.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${transcoder.storage.s3.secret-key:}")
+    private String secretKey;
+
+    @Value("${transcoder.storage.s3.path-style:true}")
+    private boolean pathStyle;
+
+    @Bean
+    public S3Client s3Client() {
+        var builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider())
+                .forcePathStyle(pathStyle);
+
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        return builder.build();
+    }
+
+    @Bean
+    public S3TransferManager s3TransferManager(@Value("${transcoder.storage.s3.part-size:16MB}") DataSize partSize,
+                                               @Value("${transcoder.storage.s3.upload-concurrency:16}") int uploadConcurrency) {
+        // Files above the part size, and the files of an HLS ladder, are uploaded concurrently
+        var builder = S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider())
+                .forcePathStyle(pathStyle)
+                .multipartEnabled(true)
+                .multipartConfiguration(MultipartConfiguration.builder()
+                        .thresholdInBytes(partSize.toBytes())
+                        .minimumPartSizeInBytes(partSize.toBytes())
+                        .build())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(uploadConcurrency));
+
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        return S3TransferManager.builder().s3Client(builder.build()).build();
+    }
+
+    @Bean
+    public S3Presigner s3Presigner() {
+        var builder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider())
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build());
+
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        return builder.build();
+    }
+
+    private AwsCredentialsProvider credentialsProvider() {
+        if (accessKey.isBlank()) {
+            return DefaultCredentialsProvider.create();
+        }
+
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+    }
+}
@@ -0,0 +1,34 @@
+package com.exentricdev.transcoder_worker.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Splits the available cores between concurrent transcode slots. Each slot is one
+ * listener consumer running one ffmpeg process with its share of the threads.
+ */
+@Component
+public class TranscodeSlots {
+    // Cores given to a single ffmpeg process when the slot count is derived automatically
+    private static final int DEFAULT_THREADS_PER_SLOT = 4;
+
+    private final int slots;
+    private final int threadsPerJob;
+
+    public TranscodeSlots(@Value("${transcoder.slots:0}") int configuredSlots) {
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        this.slots = configuredSlots > 0
+                ? configuredSlots
+                : Math.max(1, cores / DEFAULT_THREADS_PER_SLOT);
+        this.threadsPerJob = Math.max(1, cores / slots);
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public int getThreadsPerJob() {
+        return threadsPerJob;
+    }
+}
@@ -0,0 +1,24 @@
+package com.exentricdev.transcoder_worker.dto;
+
+/**
+ * @param container    ffprobe's format name, e.g. "mov,mp4,m4a,3gp,3g2,mj2"
+ * @param videoBitrate bits per second of the video stream, or of the whole file if only that is known, 0 if unknown
+ * @param audioCodec   null if there is no audio stream
+ */
+public record MediaInfo(
+    int width,
+    int height,
+    boolean hasAudio,
+    double durationSeconds,
+    String container,
+    String videoCodec,
+    String videoProfile,
+    String pixelFormat,
+    long videoBitrate,
+    String audioCodec
+) {
+    public MediaInfo withDurationSeconds(double durationSeconds) {
+        return new MediaInfo(width, height, hasAudio, durationSeconds, container, videoCodec, videoProfile,
+                pixelFormat, videoBitrate, audioCodec);
+    }
+}
@@ -1,4 +1,4 @@
 package com.exentricdev.transcoder_worker.dto;
 
-public record ProcessedVideo(String videoId, String outputPath) {
+public record ProcessedVideo(String videoId, String outputPath, String format, String artworkPath) {
 }
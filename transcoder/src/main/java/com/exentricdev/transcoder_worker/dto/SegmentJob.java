@@ -0,0 +1,13 @@
+package com.exentricdev.transcoder_worker.dto;
+
+import java.time.Duration;
+
+// One segment of a long video, encoded by whichever worker picks it up
+public record SegmentJob(
+    String videoId,
+    int index,
+    String sourceKey,
+    String outputKey,
+    Duration timeout
+) {
+}
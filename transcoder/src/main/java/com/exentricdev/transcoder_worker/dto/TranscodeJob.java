@@ -1,8 +1,13 @@
 package com.exentricdev.transcoder_worker.dto;
 
+import java.time.Instant;
+
+// publishedAt is null for jobs queued by backends that predate it
 public record TranscodeJob(
     String videoId,
     String inputPath,
-    String outputPath
+    String outputPath,
+    String uploaderId,
+    Instant publishedAt
 ) {
 }
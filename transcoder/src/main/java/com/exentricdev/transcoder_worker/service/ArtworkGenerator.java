@@ -0,0 +1,179 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Produces the poster, thumbnails and seek-preview sprite sheet (with its WebVTT index)
+ * for a video. Artwork is optional, so failures are logged and reported as "no artwork"
+ * instead of failing the transcode.
+ */
+@Component
+public class ArtworkGenerator {
+    private static final Logger log = LoggerFactory.getLogger(ArtworkGenerator.class);
+
+    // Always produced when generation succeeds, so its presence marks published artwork
+    public static final String POSTER = "poster.jpg";
+
+    private static final int[] THUMBNAIL_WIDTHS = {320, 640};
+    private static final int SPRITE_COLUMNS = 10;
+    private static final int TILE_WIDTH = 160;
+    private static final int TILE_HEIGHT = 90;
+
+    @Value("${transcoder.artwork.enabled:true}")
+    private boolean enabled;
+
+    // Upper bound on the number of tiles in the seek-preview sprite
+    @Value("${transcoder.artwork.sprite-max-tiles:100}")
+    private int spriteMaxTiles;
+
+    @Value("${transcoder.artwork.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    // The longest generate can take, the poster and the sprite each get one ffmpeg run
+    public Duration timeBudget() {
+        return enabled ? Duration.ofSeconds(2 * timeoutSeconds) : Duration.ZERO;
+    }
+
+    /**
+     * @return true if the artwork directory was written
+     */
+    public boolean generate(String inputPath, Path artworkDir, MediaInfo mediaInfo, String videoId) {
+        if (!enabled || mediaInfo.width() <= 0) {
+            return false;
+        }
+
+        Path tempDir = Path.of(artworkDir + ".tmp");
+
+        try {
+            Directories.deleteRecursively(tempDir);
+            Files.createDirectories(tempDir);
+
+            runFfmpeg(posterCommand(inputPath, tempDir, mediaInfo), videoId);
+
+            if (mediaInfo.durationSeconds() > 0) {
+                double interval = Math.max(1.0, mediaInfo.durationSeconds() / spriteMaxTiles);
+                int tiles = (int) Math.max(1, Math.ceil(mediaInfo.durationSeconds() / interval));
+
+                runFfmpeg(spriteCommand(inputPath, tempDir, interval, tiles), videoId);
+                Files.writeString(tempDir.resolve("sprite.vtt"), spriteIndex(interval, tiles, mediaInfo.durationSeconds()), StandardCharsets.UTF_8);
+            }
+
+            Directories.deleteRecursively(artworkDir);
+            Files.move(tempDir, artworkDir, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.warn("Failed to generate artwork for videoId: {} - {}", videoId, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            Directories.deleteRecursively(tempDir);
+        }
+    }
+
+    // One decode of a frame a tenth of the way in, fanned out to every poster and thumbnail size
+    private List<String> posterCommand(String inputPath, Path outputDir, MediaInfo mediaInfo) {
+        double posterAt = mediaInfo.durationSeconds() > 0 ? mediaInfo.durationSeconds() * 0.1 : 0;
+        int outputs = 2 + THUMBNAIL_WIDTHS.length;
+
+        StringBuilder filter = new StringBuilder("[0:v]split=").append(outputs);
+        for (int i = 0; i < outputs; i++) {
+            filter.append("[p").append(i).append(']');
+        }
+        for (int i = 0; i < THUMBNAIL_WIDTHS.length; i++) {
+            filter.append(";[p").append(i + 2).append("]scale=").append(THUMBNAIL_WIDTHS[i]).append(":-2[t").append(i).append(']');
+        }
+
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg",
+                "-y",
+                "-ss", String.format(Locale.ROOT, "%.3f", posterAt),
+                "-i", inputPath,
+                "-filter_complex", filter.toString(),
+                "-map", "[p0]", "-frames:v", "1", "-q:v", "2", outputDir.resolve(POSTER).toString(),
+                "-map", "[p1]", "-frames:v", "1", "-quality", "80", outputDir.resolve("poster.webp").toString()
+        ));
+
+        for (int i = 0; i < THUMBNAIL_WIDTHS.length; i++) {
+            command.addAll(List.of(
+                    "-map", "[t" + i + "]", "-frames:v", "1", "-q:v", "4",
+                    outputDir.resolve("thumb_" + THUMBNAIL_WIDTHS[i] + ".jpg").toString()
+            ));
+        }
+
+        return command;
+    }
+
+    private List<String> spriteCommand(String inputPath, Path outputDir, double interval, int tiles) {
+        int rows = (tiles + SPRITE_COLUMNS - 1) / SPRITE_COLUMNS;
+        String filter = String.format(Locale.ROOT,
+                "fps=1/%.3f,scale=%d:%d:force_original_aspect_ratio=decrease,pad=%d:%d:(ow-iw)/2:(oh-ih)/2,tile=%dx%d",
+                interval, TILE_WIDTH, TILE_HEIGHT, TILE_WIDTH, TILE_HEIGHT, SPRITE_COLUMNS, rows);
+
+        return List.of(
+                "ffmpeg",
+                "-y",
+                "-i", inputPath,
+                "-an",
+                "-vf", filter,
+                "-frames:v", "1",
+                "-q:v", "5",
+                outputDir.resolve("sprite.jpg").toString()
+        );
+    }
+
+    private String spriteIndex(double interval, int tiles, double durationSeconds) {
+        StringBuilder vtt = new StringBuilder("WEBVTT\n");
+
+        for (int i = 0; i < tiles; i++) {
+            double start = i * interval;
+            double end = Math.min(durationSeconds, start + interval);
+            int x = (i % SPRITE_COLUMNS) * TILE_WIDTH;
+            int y = (i / SPRITE_COLUMNS) * TILE_HEIGHT;
+
+            vtt.append('\n')
+                    .append(timestamp(start)).append(" --> ").append(timestamp(end)).append('\n')
+                    .append("sprite.jpg#xywh=").append(x).append(',').append(y).append(',')
+                    .append(TILE_WIDTH).append(',').append(TILE_HEIGHT).append('\n');
+        }
+
+        return vtt.toString();
+    }
+
+    private String timestamp(double seconds) {
+        long millis = Math.round(seconds * 1000);
+
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d",
+                millis / 3_600_000, (millis / 60_000) % 60, (millis / 1000) % 60, millis % 1000);
+    }
+
+    private void runFfmpeg(List<String> command, String videoId) throws IOException, InterruptedException {
+        FfmpegProcess process = FfmpegProcess.start(command, block -> {
+        });
+
+        if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("Artwork generation timed out for videoId: " + videoId);
+        }
+
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("ffmpeg exited with " + process.exitValue() + ": " + process.errorTail());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.exentricdev.transcoder_worker.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+final class Directories {
+    private static final Logger log = LoggerFactory.getLogger(Directories.class);
+
+    private Directories() {
+    }
+
+    /**
+     * Best-effort removal of a directory tree, used for scratch output of failed attempts.
+     */
+    static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Failed to delete {}", path, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to clean up directory {}", dir, e);
+        }
+    }
+
+    /**
+     * Total size of the regular files in a directory tree.
+     */
+    static long size(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            long total = 0;
+
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                total += Files.size(path);
+            }
+
+            return total;
+        }
+    }
+}
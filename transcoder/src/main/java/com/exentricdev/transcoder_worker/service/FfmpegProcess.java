@@ -0,0 +1,119 @@
+package com.exentricdev.transcoder_worker.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs ffmpeg with machine-readable progress on stdout and drains both output pipes
+ * continuously, so the process can never stall on a full pipe buffer.
+ */
+public class FfmpegProcess {
+    private static final int ERROR_TAIL_LINES = 20;
+    private static final long READER_JOIN_MILLIS = 5000;
+
+    private final Process process;
+    private final Thread progressReader;
+    private final Thread errorReader;
+    private final Deque<String> errorTail = new ArrayDeque<>();
+
+    private FfmpegProcess(Process process, Consumer<Map<String, String>> onProgress) {
+        this.process = process;
+        this.progressReader = Thread.ofVirtual()
+                .name("ffmpeg-progress-" + process.pid())
+                .start(() -> readProgress(process.getInputStream(), onProgress));
+        this.errorReader = Thread.ofVirtual()
+                .name("ffmpeg-stderr-" + process.pid())
+                .start(() -> readErrors(process.getErrorStream()));
+    }
+
+    /**
+     * @param command    the ffmpeg command line, starting with the executable
+     * @param onProgress receives one key/value block per progress report
+     */
+    public static FfmpegProcess start(List<String> command, Consumer<Map<String, String>> onProgress) throws IOException {
+        List<String> fullCommand = new ArrayList<>(command);
+        fullCommand.addAll(1, List.of("-nostdin", "-progress", "pipe:1", "-nostats"));
+
+        return new FfmpegProcess(new ProcessBuilder(fullCommand).start(), onProgress);
+    }
+
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        return process.waitFor(timeout, unit);
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    public Process destroyForcibly() {
+        return process.destroyForcibly();
+    }
+
+    public int exitValue() throws InterruptedException {
+        int exitValue = process.exitValue();
+
+        // Make sure the final progress block and error lines have been consumed
+        progressReader.join(READER_JOIN_MILLIS);
+        errorReader.join(READER_JOIN_MILLIS);
+
+        return exitValue;
+    }
+
+    public String errorTail() {
+        synchronized (errorTail) {
+            return String.join("\n", errorTail);
+        }
+    }
+
+    private void readProgress(InputStream stream, Consumer<Map<String, String>> onProgress) {
+        Map<String, String> block = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int eq = line.indexOf('=');
+                if (eq == -1) {
+                    continue;
+                }
+
+                block.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+
+                // Every block ends with progress=continue or progress=end
+                if (line.startsWith("progress=")) {
+                    onProgress.accept(Map.copyOf(block));
+                    block.clear();
+                }
+            }
+        } catch (IOException e) {
+            // The pipe closes when the process is destroyed
+        }
+    }
+
+    private void readErrors(InputStream stream) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (errorTail) {
+                    if (errorTail.size() == ERROR_TAIL_LINES) {
+                        errorTail.removeFirst();
+                    }
+
+                    errorTail.addLast(line);
+                }
+            }
+        } catch (IOException e) {
+            // The pipe closes when the process is destroyed
+        }
+    }
+}
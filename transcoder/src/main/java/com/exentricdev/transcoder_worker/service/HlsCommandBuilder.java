@@ -0,0 +1,165 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.config.TranscodeSlots;
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a single ffmpeg invocation that decodes the input once and encodes every
+ * rendition of the HLS ladder from a split/scale filter graph.
+ */
+@Component
+public class HlsCommandBuilder {
+    public static final String MASTER_PLAYLIST = "master.m3u8";
+
+    private final TranscodeSlots transcodeSlots;
+
+    // Comma separated list of height:videoBitrateKbps pairs, highest rendition first
+    @Value("${transcoder.hls.ladder:1080:5000,720:2800,480:1400,360:800}")
+    private String ladder;
+
+    @Value("${transcoder.hls.segment-seconds:4}")
+    private int segmentSeconds;
+
+    // "fmp4" or "mpegts"
+    @Value("${transcoder.hls.segment-type:fmp4}")
+    private String segmentType;
+
+    @Value("${transcoder.hls.audio-bitrate:128k}")
+    private String audioBitrate;
+
+    @Value("${transcoder.preset:fast}")
+    private String preset;
+
+    public HlsCommandBuilder(TranscodeSlots transcodeSlots) {
+        this.transcodeSlots = transcodeSlots;
+    }
+
+    public record Rendition(int height, int videoBitrateKbps) {
+    }
+
+    public List<String> build(String inputPath, Path outputDir, MediaInfo mediaInfo) {
+        List<Rendition> renditions = renditionsFor(mediaInfo.height());
+        int count = renditions.size();
+
+        // [0:v]split=N[v0][v1]...;[v0]scale=-2:1080[v0out];...
+        StringBuilder filter = new StringBuilder("[0:v]split=").append(count);
+        for (int i = 0; i < count; i++) {
+            filter.append("[v").append(i).append(']');
+        }
+        for (int i = 0; i < count; i++) {
+            filter.append(";[v").append(i).append("]scale=-2:").append(renditions.get(i).height()).append("[v").append(i).append("out]");
+        }
+
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg",
+                "-y",
+                "-i", inputPath,
+                "-filter_complex", filter.toString()
+        ));
+
+        List<String> streamMap = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            int bitrate = renditions.get(i).videoBitrateKbps();
+
+            command.addAll(List.of(
+                    "-map", "[v" + i + "out]",
+                    "-c:v:" + i, "libx264",
+                    "-b:v:" + i, bitrate + "k",
+                    "-maxrate:v:" + i, (bitrate * 107 / 100) + "k",
+                    "-bufsize:v:" + i, (bitrate * 3 / 2) + "k"
+            ));
+
+            streamMap.add(mediaInfo.hasAudio() ? "v:" + i + ",a:" + i : "v:" + i);
+        }
+
+        if (mediaInfo.hasAudio()) {
+            for (int i = 0; i < count; i++) {
+                command.addAll(List.of(
+                        "-map", "0:a:0",
+                        "-c:a:" + i, "aac",
+                        "-b:a:" + i, audioBitrate
+                ));
+            }
+        }
+
+        boolean fmp4 = segmentType.equals("fmp4");
+
+        command.addAll(List.of(
+                "-preset", preset,
+                "-threads", String.valueOf(transcodeSlots.getThreadsPerJob()),
+                "-filter_complex_threads", String.valueOf(transcodeSlots.getThreadsPerJob()),
+                // Keyframes on segment boundaries so every rendition switches cleanly
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")",
+                "-sc_threshold", "0",
+                "-f", "hls",
+                "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_playlist_type", "vod",
+                "-hls_segment_type", fmp4 ? "fmp4" : "mpegts",
+                "-hls_flags", "independent_segments"
+        ));
+
+        if (fmp4) {
+            command.addAll(List.of("-hls_fmp4_init_filename", "init.mp4"));
+        }
+
+        command.addAll(List.of(
+                "-master_pl_name", MASTER_PLAYLIST,
+                "-hls_segment_filename", outputDir.resolve("v%v").resolve("seg_%05d." + (fmp4 ? "m4s" : "ts")).toString(),
+                "-var_stream_map", String.join(" ", streamMap),
+                outputDir.resolve("v%v").resolve("index.m3u8").toString()
+        ));
+
+        return command;
+    }
+
+    public int renditionCount(MediaInfo mediaInfo) {
+        return renditionsFor(mediaInfo.height()).size();
+    }
+
+    public List<Rendition> renditions(MediaInfo mediaInfo) {
+        return renditionsFor(mediaInfo.height());
+    }
+
+    /**
+     * Drops renditions above the source height so nothing is upscaled, keeping at least
+     * the lowest rung (capped to the source height) for small inputs.
+     */
+    private List<Rendition> renditionsFor(int sourceHeight) {
+        List<Rendition> all = Arrays.stream(ladder.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .map(entry -> {
+                    String[] parts = entry.split(":");
+                    return new Rendition(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+                })
+                .toList();
+
+        if (all.isEmpty()) {
+            throw new IllegalStateException("transcoder.hls.ladder must contain at least one rendition");
+        }
+
+        if (sourceHeight <= 0) {
+            return all;
+        }
+
+        List<Rendition> renditions = all.stream()
+                .filter(rendition -> rendition.height() <= sourceHeight)
+                .toList();
+
+        if (renditions.isEmpty()) {
+            Rendition lowest = all.get(all.size() - 1);
+            int height = sourceHeight - (sourceHeight % 2);
+            return List.of(new Rendition(height, lowest.videoBitrateKbps()));
+        }
+
+        return renditions;
+    }
+}
@@ -0,0 +1,119 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class MediaProbe {
+    private static final long PROBE_TIMEOUT_SECONDS = 30;
+
+    public MediaInfo probe(String inputPath) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(
+                "ffprobe",
+                "-v", "error",
+                "-show_entries", "format=duration,format_name,bit_rate:stream=codec_type,codec_name,profile,pix_fmt,width,height,bit_rate",
+                "-of", "default",
+                inputPath
+        );
+
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+
+        // ffprobe prints fields in its own order, so each [STREAM] or [FORMAT] section is collected first
+        List<Map<String, String>> streams = new ArrayList<>();
+        Map<String, String> format = Map.of();
+        Map<String, String> section = null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                switch (line) {
+                    case "[STREAM]", "[FORMAT]" -> section = new HashMap<>();
+                    case "[/STREAM]" -> {
+                        if (section != null) {
+                            streams.add(section);
+                        }
+                        section = null;
+                    }
+                    case "[/FORMAT]" -> {
+                        if (section != null) {
+                            format = section;
+                        }
+                        section = null;
+                    }
+                    default -> {
+                        int eq = line.indexOf('=');
+                        if (section != null && eq != -1) {
+                            section.put(line.substring(0, eq), line.substring(eq + 1).trim());
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!process.waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("ffprobe timed out for input: " + inputPath);
+        }
+
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("ffprobe failed for input: " + inputPath + " with exit code: " + process.exitValue());
+        }
+
+        // Only the first video and audio streams are used
+        Map<String, String> video = firstOfType(streams, "video");
+        Map<String, String> audio = firstOfType(streams, "audio");
+
+        // Some containers only report the overall bitrate, which is an upper bound for the video
+        long videoBitrate = parseLong(video.get("bit_rate"));
+        if (videoBitrate == 0) {
+            videoBitrate = parseLong(format.get("bit_rate"));
+        }
+
+        return new MediaInfo(
+                (int) parseLong(video.get("width")),
+                (int) parseLong(video.get("height")),
+                !audio.isEmpty(),
+                parseDouble(format.get("duration")),
+                format.getOrDefault("format_name", ""),
+                video.getOrDefault("codec_name", ""),
+                video.getOrDefault("profile", ""),
+                video.getOrDefault("pix_fmt", ""),
+                videoBitrate,
+                audio.isEmpty() ? null : audio.getOrDefault("codec_name", "")
+        );
+    }
+
+    private Map<String, String> firstOfType(List<Map<String, String>> streams, String codecType) {
+        return streams.stream()
+                .filter(stream -> codecType.equals(stream.get("codec_type")))
+                .findFirst()
+                .orElse(Map.of());
+    }
+
+    private long parseLong(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0; // "N/A"
+        }
+    }
+
+    private double parseDouble(String value) {
+        try {
+            return value == null ? 0 : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0; // "N/A"
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.dto.TranscodeJob;
+import com.exentricdev.transcoder_worker.dto.TranscodeProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Component
+public class ProgressPublisher {
+    private static final Logger log = LoggerFactory.getLogger(ProgressPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+
+    // Minimum time between two progress messages for the same job
+    @Value("${transcoder.progress.interval:2s}")
+    private Duration interval;
+
+    public ProgressPublisher(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    /**
+     * Returns a throttled progress callback for one job. It is called from a single
+     * reader thread, so it keeps its state without synchronization.
+     */
+    public Consumer<Map<String, String>> forJob(TranscodeJob job, double durationSeconds) {
+        long intervalNanos = interval.toNanos();
+        long[] lastSent = {System.nanoTime() - intervalNanos};
+
+        return block -> {
+            boolean end = "end".equals(block.get("progress"));
+            long now = System.nanoTime();
+
+            if (!end && now - lastSent[0] < intervalNanos) {
+                return;
+            }
+
+            lastSent[0] = now;
+
+            // out_time_us is the position of the encoder in the output, in microseconds
+            double outSeconds = Math.max(0, parseDouble(block.get("out_time_us"))) / 1_000_000.0;
+            double fps = parseDouble(block.get("fps"));
+            double speed = parseDouble(stripSuffix(block.get("speed")));
+
+            double percent = end ? 100.0
+                    : durationSeconds > 0 ? Math.min(99.9, outSeconds / durationSeconds * 100.0) : 0.0;
+            long etaSeconds = end ? 0
+                    : durationSeconds > 0 && speed > 0 ? Math.round((durationSeconds - outSeconds) / speed) : -1;
+
+            send(job, percent, fps, speed, Math.max(-1, etaSeconds));
+        };
+    }
+
+    /**
+     * Reports progress of a job whose work is split up, e.g. into segments encoded in parallel,
+     * where no single ffmpeg process knows the overall position.
+     */
+    public void publish(TranscodeJob job, double percent) {
+        send(job, Math.min(99.9, percent), 0, 0, -1);
+    }
+
+    private void send(TranscodeJob job, double percent, double fps, double speed, long etaSeconds) {
+        try {
+            rabbitTemplate.convertAndSend("video-progress", new TranscodeProgress(
+                    job.videoId(),
+                    job.uploaderId(),
+                    percent,
+                    fps,
+                    speed,
+                    etaSeconds
+            ));
+        } catch (AmqpException e) {
+            // Progress is best effort and must never fail the transcode
+            log.debug("Failed to publish progress for videoId: {}", job.videoId(), e);
+        }
+    }
+
+    private String stripSuffix(String speed) {
+        return speed != null && speed.endsWith("x") ? speed.substring(0, speed.length() - 1) : speed;
+    }
+
+    private double parseDouble(String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0; // "N/A"
+        }
+    }
+}
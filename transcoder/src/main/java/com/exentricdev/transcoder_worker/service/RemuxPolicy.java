@@ -0,0 +1,99 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Decides whether an input can be served as progressive MP4 by copying its streams into a
+ * faststart container instead of re-encoding them. Most phone uploads are H.264/AAC already,
+ * and a remux takes seconds where an encode takes minutes.
+ */
+@Component
+public class RemuxPolicy {
+    public static final String COMPLIANT = "compliant";
+
+    // Pixel formats every browser decodes, the "j" variant only differs in colour range
+    private static final Set<String> PIXEL_FORMATS = Set.of("yuv420p", "yuvj420p");
+
+    private final boolean enabled;
+    private final Set<String> profiles;
+    private final int maxHeight;
+    private final long maxVideoBitrate;
+    private final double timeoutFraction;
+    private final Duration minTimeout;
+
+    public RemuxPolicy(@Value("${transcoder.remux.enabled:true}") boolean enabled,
+                       @Value("${transcoder.remux.profiles:Constrained Baseline,Baseline,Main,High}") List<String> profiles,
+                       @Value("${transcoder.remux.max-height:1080}") int maxHeight,
+                       @Value("${transcoder.remux.max-video-kbps:8000}") long maxVideoKbps,
+                       @Value("${transcoder.remux.timeout-fraction:0.1}") double timeoutFraction,
+                       @Value("${transcoder.remux.min-timeout:30s}") Duration minTimeout) {
+        this.enabled = enabled;
+        this.profiles = profiles.stream().map(String::trim).collect(Collectors.toUnmodifiableSet());
+        this.maxHeight = maxHeight;
+        this.maxVideoBitrate = maxVideoKbps * 1000;
+        this.timeoutFraction = timeoutFraction;
+        this.minTimeout = minTimeout;
+    }
+
+    /**
+     * @param reason {@link #COMPLIANT}, or the first check the input failed, used as a metric tag
+     */
+    public record Decision(boolean remux, String reason) {
+        static Decision encode(String reason) {
+            return new Decision(false, reason);
+        }
+    }
+
+    /**
+     * How long a remux may run before the job falls back to an encode. A stream copy only
+     * rewrites the container, so it gets a fraction of the encode deadline.
+     */
+    public Duration timeoutFor(Duration encodeDeadline) {
+        Duration timeout = Duration.ofMillis(Math.round(encodeDeadline.toMillis() * timeoutFraction));
+
+        if (timeout.compareTo(minTimeout) < 0) {
+            timeout = minTimeout;
+        }
+
+        return timeout.compareTo(encodeDeadline) > 0 ? encodeDeadline : timeout;
+    }
+
+    public Decision decide(MediaInfo mediaInfo) {
+        if (!enabled) {
+            return Decision.encode("disabled");
+        }
+        if (Arrays.stream(mediaInfo.container().split(",")).noneMatch(name -> name.equals("mp4") || name.equals("mov"))) {
+            return Decision.encode("container");
+        }
+        if (!mediaInfo.videoCodec().equals("h264")) {
+            return Decision.encode("video_codec");
+        }
+        if (!profiles.contains(mediaInfo.videoProfile())) {
+            return Decision.encode("profile");
+        }
+        if (!PIXEL_FORMATS.contains(mediaInfo.pixelFormat())) {
+            return Decision.encode("pixel_format");
+        }
+        // Portrait videos are compared by their short side
+        if (mediaInfo.height() <= 0 || Math.min(mediaInfo.width(), mediaInfo.height()) > maxHeight) {
+            return Decision.encode("resolution");
+        }
+        // An unknown bitrate could be anything, so it is not trusted
+        if (mediaInfo.videoBitrate() <= 0 || mediaInfo.videoBitrate() > maxVideoBitrate) {
+            return Decision.encode("bitrate");
+        }
+        if (mediaInfo.hasAudio() && !"aac".equals(mediaInfo.audioCodec())) {
+            return Decision.encode("audio_codec");
+        }
+
+        return new Decision(true, COMPLIANT);
+    }
+}
@@ -0,0 +1,148 @@
+package com.exentricdev.transcoder_worker.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * The ffmpeg steps of a segmented transcode: cutting the video stream into keyframe-aligned
+ * segments without re-encoding, encoding each segment, encoding the audio in one piece and
+ * joining everything into a faststart MP4.
+ */
+@Component
+public class SegmentEncoder {
+    @Value("${transcoder.preset:fast}")
+    private String preset;
+
+    /**
+     * Cuts the first video stream at the first keyframe after every {@code segmentSeconds}.
+     *
+     * @return the segment files in playback order
+     */
+    public List<Path> split(String input, Path outputDir, int segmentSeconds, Duration timeout)
+            throws IOException, InterruptedException, TimeoutException {
+        Files.createDirectories(outputDir);
+
+        // Matroska takes any codec the input may have been recorded with
+        run(List.of(
+                "ffmpeg",
+                "-i", input,
+                "-map", "0:v:0",
+                "-an", "-sn", "-dn",
+                "-c", "copy",
+                "-f", "segment",
+                "-segment_time", String.valueOf(segmentSeconds),
+                "-reset_timestamps", "1",
+                outputDir.resolve("%05d.mkv").toString()
+        ), timeout);
+
+        try (Stream<Path> files = Files.list(outputDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".mkv")).sorted().toList();
+        }
+    }
+
+    /**
+     * Encodes one segment with the same settings as a whole-file encode, so the segments can be
+     * joined without re-encoding.
+     */
+    public void encodeSegment(String input, Path output, int threads, Duration timeout)
+            throws IOException, InterruptedException, TimeoutException {
+        Files.deleteIfExists(output);
+
+        run(List.of(
+                "ffmpeg",
+                "-i", input,
+                "-map", "0:v:0",
+                "-c:v", "libx264",
+                "-preset", preset,
+                "-crf", "22",
+                "-threads", String.valueOf(threads),
+                output.toString()
+        ), timeout);
+    }
+
+    public void encodeAudio(String input, Path output, Duration timeout)
+            throws IOException, InterruptedException, TimeoutException {
+        Files.deleteIfExists(output);
+
+        run(List.of(
+                "ffmpeg",
+                "-i", input,
+                "-map", "0:a:0",
+                "-vn",
+                "-c:a", "aac",
+                "-b:a", "128k",
+                output.toString()
+        ), timeout);
+    }
+
+    /**
+     * @param segments paths or URLs of the encoded segments in playback order
+     * @param audio    the encoded audio, or null for a silent video
+     */
+    public void concat(List<String> segments, Path audio, Path workDir, Path output, Duration timeout)
+            throws IOException, InterruptedException, TimeoutException {
+        StringBuilder list = new StringBuilder();
+        for (String segment : segments) {
+            list.append("file '").append(segment.replace("'", "'\\''")).append("'\n");
+        }
+
+        Path listFile = workDir.resolve("segments.txt");
+        Files.writeString(listFile, list, StandardCharsets.UTF_8);
+        Files.deleteIfExists(output);
+
+        // Segments stored in a bucket are listed as presigned URLs
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg",
+                "-f", "concat",
+                "-safe", "0",
+                "-protocol_whitelist", "file,http,https,tcp,tls,crypto",
+                "-i", listFile.toString()
+        ));
+
+        if (audio != null) {
+            command.addAll(List.of("-i", audio.toString(), "-map", "0:v:0", "-map", "1:a:0"));
+        }
+
+        command.addAll(List.of(
+                "-c", "copy",
+                "-movflags", "+faststart",
+                output.toString()
+        ));
+
+        run(command, timeout);
+    }
+
+    private void run(List<String> command, Duration timeout) throws IOException, InterruptedException, TimeoutException {
+        FfmpegProcess process = FfmpegProcess.start(command, block -> {
+        });
+
+        boolean finished;
+        try {
+            finished = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // Segments of a failed job are abandoned by interrupting their threads
+            process.destroyForcibly();
+            throw e;
+        }
+
+        if (!finished) {
+            process.destroyForcibly();
+            throw new TimeoutException("ffmpeg did not finish within " + timeout.toSeconds() + "s");
+        }
+
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("ffmpeg exited with " + process.exitValue() + ": " + process.errorTail());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.config.TranscodeSlots;
+import com.exentricdev.transcoder_worker.dto.SegmentJob;
+import com.exentricdev.transcoder_worker.storage.VideoStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Encodes segments that {@link SegmentedTranscoder} fanned out to the transcode-segments queue.
+ * Failures are not redelivered by RabbitMQ, the job waiting for the segment retries it.
+ */
+@Service
+public class SegmentListener {
+    private static final Logger log = LoggerFactory.getLogger(SegmentListener.class);
+
+    private final VideoStorage videoStorage;
+    private final SegmentEncoder segmentEncoder;
+    private final TranscodeSlots transcodeSlots;
+    private final TranscodeMetrics transcodeMetrics;
+
+    public SegmentListener(VideoStorage videoStorage, SegmentEncoder segmentEncoder, TranscodeSlots transcodeSlots,
+                           TranscodeMetrics transcodeMetrics) {
+        this.videoStorage = videoStorage;
+        this.segmentEncoder = segmentEncoder;
+        this.transcodeSlots = transcodeSlots;
+        this.transcodeMetrics = transcodeMetrics;
+    }
+
+    static String failedKey(String outputKey) {
+        return outputKey + ".failed";
+    }
+
+    @RabbitListener(queues = SegmentedTranscoder.QUEUE, containerFactory = "segmentListenerContainerFactory")
+    public void receiveSegment(SegmentJob job) {
+        long startedAt = System.nanoTime();
+        Path staged = null;
+
+        try {
+            if (videoStorage.exists(job.outputKey())) {
+                return;
+            }
+
+            String input = videoStorage.readLocation(job.sourceKey());
+            staged = videoStorage.stagingPath(job.outputKey());
+
+            segmentEncoder.encodeSegment(input, staged, transcodeSlots.getThreadsPerJob(), job.timeout());
+            videoStorage.publish(job.outputKey(), staged);
+            transcodeMetrics.recordSegment("queue", "success", System.nanoTime() - startedAt);
+        } catch (FileNotFoundException e) {
+            // The job the segment belongs to has finished or given up and cleaned up after itself
+            log.info("Dropping segment {} of videoId: {}, its source is gone", job.index(), job.videoId());
+        } catch (IOException | IllegalStateException | TimeoutException e) {
+            transcodeMetrics.recordSegment("queue", "failed", System.nanoTime() - startedAt);
+            log.warn("Segment {} of videoId: {} failed - {}", job.index(), job.videoId(), e.getMessage());
+            reportFailure(job, e);
+            throw new AmqpRejectAndDontRequeueException("Segment failed for videoId: " + job.videoId(), e);
+        } catch (InterruptedException e) {
+            // Shutting down, leave the segment for another worker
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while encoding segment for videoId: " + job.videoId(), e);
+        } finally {
+            if (staged != null) {
+                try {
+                    Files.deleteIfExists(staged);
+                } catch (IOException e) {
+                    log.warn("Failed to delete staged segment {}", staged, e);
+                }
+            }
+        }
+    }
+
+    private void reportFailure(SegmentJob job, Exception cause) {
+        try {
+            videoStorage.createIfAbsent(failedKey(job.outputKey()), String.valueOf(cause.getMessage()));
+        } catch (IOException e) {
+            log.warn("Failed to report failure of segment {} of videoId: {}", job.index(), job.videoId(), e);
+        }
+    }
+}
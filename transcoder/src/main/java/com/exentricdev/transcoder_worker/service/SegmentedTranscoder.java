@@ -0,0 +1,311 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.config.TranscodeSlots;
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import com.exentricdev.transcoder_worker.dto.SegmentJob;
+import com.exentricdev.transcoder_worker.dto.TranscodeJob;
+import com.exentricdev.transcoder_worker.storage.VideoStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Transcodes long videos as keyframe-aligned segments encoded in parallel, so time-to-playable
+ * stops growing linearly with duration. Segments are either encoded on this worker's cores or
+ * published to the transcode-segments queue for any worker to pick up, with their sources and
+ * results exchanged through the video storage. A failed segment is retried on its own.
+ */
+@Component
+public class SegmentedTranscoder {
+    private static final Logger log = LoggerFactory.getLogger(SegmentedTranscoder.class);
+
+    public static final String QUEUE = "transcode-segments";
+
+    private static final String DISPATCH_QUEUE = "queue";
+    private static final long POLL_MILLIS = 1000;
+
+    // Threads given to each segment when the local parallelism is derived automatically
+    private static final int THREADS_PER_SEGMENT = 2;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final VideoStorage videoStorage;
+    private final SegmentEncoder segmentEncoder;
+    private final TranscodeSlots transcodeSlots;
+    private final TranscodeDeadlines transcodeDeadlines;
+    private final ProgressPublisher progressPublisher;
+    private final TranscodeMetrics transcodeMetrics;
+
+    @Value("${transcoder.segments.enabled:true}")
+    private boolean enabled;
+
+    // Shorter videos are encoded in one piece
+    @Value("${transcoder.segments.min-duration:10m}")
+    private Duration minDuration;
+
+    @Value("${transcoder.segments.segment-seconds:120}")
+    private int segmentSeconds;
+
+    // "local" encodes segments on this worker, "queue" fans them out to every worker
+    @Value("${transcoder.segments.dispatch:local}")
+    private String dispatch;
+
+    // Segments encoded at once on this worker, 0 derives it from the slot's share of the cores
+    @Value("${transcoder.segments.local-parallelism:0}")
+    private int localParallelism;
+
+    @Value("${transcoder.segments.max-attempts:3}")
+    private int maxAttempts;
+
+    public SegmentedTranscoder(RabbitTemplate rabbitTemplate, VideoStorage videoStorage, SegmentEncoder segmentEncoder,
+                               TranscodeSlots transcodeSlots, TranscodeDeadlines transcodeDeadlines,
+                               ProgressPublisher progressPublisher, TranscodeMetrics transcodeMetrics) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.videoStorage = videoStorage;
+        this.segmentEncoder = segmentEncoder;
+        this.transcodeSlots = transcodeSlots;
+        this.transcodeDeadlines = transcodeDeadlines;
+        this.progressPublisher = progressPublisher;
+        this.transcodeMetrics = transcodeMetrics;
+    }
+
+    public boolean appliesTo(MediaInfo mediaInfo) {
+        return enabled && mediaInfo.width() > 0 && mediaInfo.durationSeconds() >= minDuration.toSeconds();
+    }
+
+    /**
+     * Encodes the input into a faststart MP4 at {@code output}.
+     *
+     * @param segmentsKey storage key under which segments are exchanged with other workers
+     */
+    public void transcode(TranscodeJob job, String input, MediaInfo mediaInfo, Path output, String segmentsKey,
+                          Duration deadline) throws IOException, InterruptedException, TimeoutException {
+        long deadlineAt = System.nanoTime() + deadline.toNanos();
+        boolean queued = dispatch.equals(DISPATCH_QUEUE);
+
+        Path workDir = videoStorage.stagingPath(segmentsKey);
+        Directories.deleteRecursively(workDir);
+        Files.createDirectories(workDir);
+
+        // Audio is cheap to encode and done in one piece, so segment boundaries cannot cause gaps in it
+        Path audio = workDir.resolve("audio.m4a");
+        FutureTask<Void> audioTask = new FutureTask<>(() -> {
+            segmentEncoder.encodeAudio(input, audio, remaining(deadlineAt));
+            return null;
+        });
+
+        try {
+            if (queued) {
+                // Start from a clean slate in case an earlier attempt left segments behind
+                videoStorage.deleteTree(segmentsKey);
+            }
+
+            if (mediaInfo.hasAudio()) {
+                Thread.ofVirtual().name("segment-audio-" + job.videoId()).start(audioTask);
+            }
+
+            List<Path> sources = segmentEncoder.split(input, workDir.resolve("src"), segmentSeconds, remaining(deadlineAt));
+            log.info("Encoding videoId: {} as {} segments ({})", job.videoId(), sources.size(), queued ? "queued" : "local");
+
+            // Bounds a single segment, a few of them can run longer than the target length
+            Duration segmentTimeout = transcodeDeadlines.deadlineFor(mediaInfo.withDurationSeconds(2.0 * segmentSeconds), false);
+
+            List<String> encoded = queued
+                    ? encodeQueued(job, sources, workDir.resolve("src"), segmentsKey, segmentTimeout, deadlineAt)
+                    : encodeLocally(job, sources, workDir.resolve("out"), segmentTimeout, deadlineAt);
+
+            if (mediaInfo.hasAudio()) {
+                awaitAudio(audioTask, deadlineAt);
+            }
+
+            segmentEncoder.concat(encoded, mediaInfo.hasAudio() ? audio : null, workDir, output, remaining(deadlineAt));
+        } finally {
+            audioTask.cancel(true);
+            Directories.deleteRecursively(workDir);
+
+            if (queued) {
+                try {
+                    videoStorage.deleteTree(segmentsKey);
+                } catch (IOException e) {
+                    log.warn("Failed to delete segments of videoId: {}", job.videoId(), e);
+                }
+            }
+        }
+    }
+
+    private List<String> encodeLocally(TranscodeJob job, List<Path> sources, Path outputDir, Duration segmentTimeout,
+                                       long deadlineAt) throws IOException, InterruptedException, TimeoutException {
+        Files.createDirectories(outputDir);
+
+        int parallelism = localParallelism > 0
+                ? localParallelism
+                : Math.max(1, transcodeSlots.getThreadsPerJob() / THREADS_PER_SEGMENT);
+        int threads = Math.max(1, transcodeSlots.getThreadsPerJob() / parallelism);
+
+        List<String> outputs = new ArrayList<>();
+        List<Future<Void>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofVirtual().name("segment-" + job.videoId() + "-", 0).factory())) {
+            for (Path source : sources) {
+                Path output = outputDir.resolve(source.getFileName().toString().replace(".mkv", ".mp4"));
+                outputs.add(output.toString());
+
+                futures.add(executor.submit(() -> {
+                    encodeWithRetries(job, source, output, threads, segmentTimeout);
+                    return null;
+                }));
+            }
+
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    futures.get(i).get(remaining(deadlineAt).toMillis(), TimeUnit.MILLISECONDS);
+                    progressPublisher.publish(job, 100.0 * (i + 1) / futures.size());
+                }
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } finally {
+                // Interrupting a segment's thread kills its ffmpeg
+                executor.shutdownNow();
+            }
+        }
+
+        return outputs;
+    }
+
+    private void encodeWithRetries(TranscodeJob job, Path source, Path output, int threads, Duration timeout)
+            throws IOException, InterruptedException, TimeoutException {
+        for (int attempt = 1; ; attempt++) {
+            long startedAt = System.nanoTime();
+
+            try {
+                segmentEncoder.encodeSegment(source.toString(), output, threads, timeout);
+                transcodeMetrics.recordSegment("local", "success", System.nanoTime() - startedAt);
+                return;
+            } catch (IllegalStateException | TimeoutException e) {
+                transcodeMetrics.recordSegment("local", "failed", System.nanoTime() - startedAt);
+
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+
+                log.warn("Segment {} of videoId: {} failed on attempt {}, retrying - {}",
+                        source.getFileName(), job.videoId(), attempt, e.getMessage());
+            }
+        }
+    }
+
+    private List<String> encodeQueued(TranscodeJob job, List<Path> sources, Path sourceDir, String segmentsKey,
+                                      Duration segmentTimeout, long deadlineAt)
+            throws IOException, InterruptedException, TimeoutException {
+        String sourceKey = VideoStorage.childKey(segmentsKey, "src");
+        videoStorage.publish(sourceKey, sourceDir);
+
+        List<SegmentJob> segments = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            String name = sources.get(i).getFileName().toString();
+
+            segments.add(new SegmentJob(
+                    job.videoId(),
+                    i,
+                    VideoStorage.childKey(sourceKey, name),
+                    VideoStorage.childKey(VideoStorage.childKey(segmentsKey, "out"), name.replace(".mkv", ".mp4")),
+                    segmentTimeout
+            ));
+        }
+
+        segments.forEach(segment -> rabbitTemplate.convertAndSend(QUEUE, segment));
+
+        // Workers report a failed segment with a marker next to its output, and it is queued again
+        Map<Integer, Integer> attempts = new HashMap<>();
+        List<SegmentJob> pending = new ArrayList<>(segments);
+
+        while (!pending.isEmpty()) {
+            if (System.nanoTime() > deadlineAt) {
+                throw new TimeoutException(pending.size() + " segments of videoId: " + job.videoId() + " did not finish in time");
+            }
+
+            Thread.sleep(POLL_MILLIS);
+
+            for (SegmentJob segment : List.copyOf(pending)) {
+                if (videoStorage.exists(segment.outputKey())) {
+                    pending.remove(segment);
+                    progressPublisher.publish(job, 100.0 * (segments.size() - pending.size()) / segments.size());
+                    continue;
+                }
+
+                String failedKey = SegmentListener.failedKey(segment.outputKey());
+                if (!videoStorage.exists(failedKey)) {
+                    continue;
+                }
+
+                int attempt = attempts.merge(segment.index(), 1, Integer::sum);
+                if (attempt >= maxAttempts) {
+                    throw new IOException("Segment " + segment.index() + " of videoId: " + job.videoId()
+                            + " failed " + attempt + " times: " + videoStorage.readString(failedKey).orElse(""));
+                }
+
+                log.warn("Segment {} of videoId: {} failed on attempt {}, retrying", segment.index(), job.videoId(), attempt);
+                videoStorage.delete(failedKey);
+                rabbitTemplate.convertAndSend(QUEUE, segment);
+            }
+        }
+
+        List<String> outputs = new ArrayList<>();
+        for (SegmentJob segment : segments) {
+            outputs.add(videoStorage.readLocation(segment.outputKey()));
+        }
+
+        return outputs;
+    }
+
+    private void awaitAudio(FutureTask<Void> audioTask, long deadlineAt)
+            throws IOException, InterruptedException, TimeoutException {
+        try {
+            audioTask.get(remaining(deadlineAt).toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private Duration remaining(long deadlineAt) {
+        return Duration.ofNanos(Math.max(0, deadlineAt - System.nanoTime()));
+    }
+
+    // Rethrows what a segment or audio task failed with, so the listener can classify it
+    private IOException unwrap(ExecutionException e) throws InterruptedException, TimeoutException {
+        Throwable cause = e.getCause();
+
+        if (cause instanceof IOException ioException) {
+            return ioException;
+        }
+        if (cause instanceof InterruptedException interruptedException) {
+            throw interruptedException;
+        }
+        if (cause instanceof TimeoutException timeoutException) {
+            throw timeoutException;
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+
+        return new IOException(cause);
+    }
+}
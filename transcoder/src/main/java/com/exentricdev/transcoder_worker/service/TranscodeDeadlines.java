@@ -0,0 +1,120 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Computes how long a transcode may run from the probed input instead of using one fixed
+ * timeout. Speeds are expressed as seconds of 1080p output encoded per wall-clock second.
+ * The configured speed for the preset is a starting point; it is refined with a moving
+ * average of the speeds actually measured on this worker.
+ */
+@Component
+public class TranscodeDeadlines {
+    private static final Logger log = LoggerFactory.getLogger(TranscodeDeadlines.class);
+
+    private static final double REFERENCE_PIXELS = 1920.0 * 1080.0;
+    private static final double MIN_PIXEL_FACTOR = 0.1;
+    private static final double SMOOTHING = 0.2;
+
+    // Jobs shorter than this are dominated by startup cost and would skew the average
+    private static final double MIN_SAMPLE_SECONDS = 5;
+
+    private final String preset;
+    private final double slack;
+    private final Duration overhead;
+    private final Duration minDeadline;
+    private final Duration maxDeadline;
+    private final HlsCommandBuilder hlsCommandBuilder;
+
+    private double measuredSpeed;
+
+    public TranscodeDeadlines(
+            @Value("${transcoder.preset:fast}") String preset,
+            @Value("${transcoder.deadline.preset-speeds:ultrafast:8,superfast:6,veryfast:4,faster:3,fast:2,medium:1.5,slow:0.8}") String presetSpeeds,
+            @Value("${transcoder.deadline.slack:3.0}") double slack,
+            @Value("${transcoder.deadline.overhead:15s}") Duration overhead,
+            @Value("${transcoder.deadline.min:90s}") Duration minDeadline,
+            @Value("${transcoder.deadline.max:4h}") Duration maxDeadline,
+            HlsCommandBuilder hlsCommandBuilder) {
+        this.preset = preset;
+        this.slack = slack;
+        this.overhead = overhead;
+        this.minDeadline = minDeadline;
+        this.maxDeadline = maxDeadline;
+        this.hlsCommandBuilder = hlsCommandBuilder;
+
+        Map<String, Double> speeds = Arrays.stream(presetSpeeds.split(","))
+                .map(entry -> entry.trim().split(":"))
+                .collect(Collectors.toMap(parts -> parts[0].trim(), parts -> Double.parseDouble(parts[1].trim())));
+
+        this.measuredSpeed = speeds.getOrDefault(preset, 1.0);
+    }
+
+    public Duration deadlineFor(MediaInfo mediaInfo, boolean hls) {
+        if (mediaInfo.durationSeconds() <= 0) {
+            return maxDeadline;
+        }
+
+        double encodeSeconds = mediaInfo.durationSeconds() * pixelFactor(mediaInfo, hls) / currentSpeed();
+        Duration deadline = overhead.plusMillis(Math.round(encodeSeconds * slack * 1000));
+
+        if (deadline.compareTo(minDeadline) < 0) {
+            return minDeadline;
+        }
+
+        return deadline.compareTo(maxDeadline) > 0 ? maxDeadline : deadline;
+    }
+
+    public void recordCompletion(MediaInfo mediaInfo, boolean hls, Duration elapsed) {
+        double elapsedSeconds = elapsed.toMillis() / 1000.0;
+
+        if (mediaInfo.durationSeconds() < MIN_SAMPLE_SECONDS || elapsedSeconds <= 0) {
+            return;
+        }
+
+        double observed = mediaInfo.durationSeconds() * pixelFactor(mediaInfo, hls) / elapsedSeconds;
+
+        synchronized (this) {
+            measuredSpeed = measuredSpeed * (1 - SMOOTHING) + observed * SMOOTHING;
+        }
+
+        log.debug("Measured {}x normalized encode speed for preset {}, average now {}", observed, preset, currentSpeed());
+    }
+
+    private synchronized double currentSpeed() {
+        return measuredSpeed;
+    }
+
+    /**
+     * Output pixels relative to a single 1080p rendition. An HLS ladder costs the sum of
+     * its renditions.
+     */
+    private double pixelFactor(MediaInfo mediaInfo, boolean hls) {
+        double sourcePixels = mediaInfo.width() > 0 && mediaInfo.height() > 0
+                ? (double) mediaInfo.width() * mediaInfo.height()
+                : REFERENCE_PIXELS;
+
+        if (!hls) {
+            return Math.max(MIN_PIXEL_FACTOR, sourcePixels / REFERENCE_PIXELS);
+        }
+
+        double aspect = mediaInfo.width() > 0 && mediaInfo.height() > 0
+                ? (double) mediaInfo.width() / mediaInfo.height()
+                : 16.0 / 9.0;
+
+        double ladderPixels = hlsCommandBuilder.renditions(mediaInfo).stream()
+                .mapToDouble(rendition -> (double) rendition.height() * rendition.height() * aspect)
+                .sum();
+
+        return Math.max(MIN_PIXEL_FACTOR, ladderPixels / REFERENCE_PIXELS);
+    }
+}
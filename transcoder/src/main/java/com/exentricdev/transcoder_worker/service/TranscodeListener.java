@@ -1,89 +1,192 @@
 package com.exentricdev.transcoder_worker.service;
 
+import com.exentricdev.transcoder_worker.config.TranscodeSlots;
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
 import com.exentricdev.transcoder_worker.dto.ProcessedVideo;
 import com.exentricdev.transcoder_worker.dto.TranscodeJob;
+import com.exentricdev.transcoder_worker.storage.VideoStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 @Service
 public class TranscodeListener {
     private static final Logger log = LoggerFactory.getLogger(TranscodeListener.class);
+    private static final String FORMAT_MP4 = "mp4";
+    private static final String FORMAT_HLS = "hls";
+    private static final long KILL_GRACE_SECONDS = 10;
+
     private final RabbitTemplate rabbitTemplate;
+    private final MediaProbe mediaProbe;
+    private final HlsCommandBuilder hlsCommandBuilder;
+    private final TranscodeSlots transcodeSlots;
+    private final ProgressPublisher progressPublisher;
+    private final TranscodeDeadlines transcodeDeadlines;
+    private final ArtworkGenerator artworkGenerator;
+    private final TranscodeMetrics transcodeMetrics;
+    private final VideoStorage videoStorage;
+    private final RemuxPolicy remuxPolicy;
+    private final SegmentedTranscoder segmentedTranscoder;
+
+    // "mp4" for a single progressive file, "hls" for an adaptive bitrate ladder
+    @Value("${transcoder.output-format:mp4}")
+    private String outputFormat;
+
+    @Value("${transcoder.preset:fast}")
+    private String preset;
 
-    public TranscodeListener(RabbitTemplate rabbitTemplate) {
+    // Uploading the output and artwork has no timeout of its own, the lock allows this much for it
+    @Value("${transcoder.lock.publish-time:5m}")
+    private Duration publishTime;
+
+    public TranscodeListener(RabbitTemplate rabbitTemplate, MediaProbe mediaProbe, HlsCommandBuilder hlsCommandBuilder,
+                             TranscodeSlots transcodeSlots, ProgressPublisher progressPublisher,
+                             TranscodeDeadlines transcodeDeadlines, ArtworkGenerator artworkGenerator,
+                             TranscodeMetrics transcodeMetrics, VideoStorage videoStorage, RemuxPolicy remuxPolicy,
+                             SegmentedTranscoder segmentedTranscoder) {
         this.rabbitTemplate = rabbitTemplate;
+        this.mediaProbe = mediaProbe;
+        this.hlsCommandBuilder = hlsCommandBuilder;
+        this.transcodeSlots = transcodeSlots;
+        this.progressPublisher = progressPublisher;
+        this.transcodeDeadlines = transcodeDeadlines;
+        this.artworkGenerator = artworkGenerator;
+        this.transcodeMetrics = transcodeMetrics;
+        this.videoStorage = videoStorage;
+        this.remuxPolicy = remuxPolicy;
+        this.segmentedTranscoder = segmentedTranscoder;
     }
 
-    @RabbitListener(queues = "video-transcoder", containerFactory = "rabbitListenerContainerFactory")
+    // transcode-jobs is a priority queue, video-transcoder only holds jobs queued before it existed
+    @RabbitListener(queues = {"transcode-jobs", "video-transcoder"}, containerFactory = "rabbitListenerContainerFactory")
     public void receiveMessage(TranscodeJob message) {
         log.info("Received message: videoId={}, inputPath={}, outputPath={}", message.videoId(), message.inputPath(), message.outputPath());
+        transcodeMetrics.recordReceived(message);
 
-        String inputPath = message.inputPath();
-        String outputPath = message.outputPath();
+        // Storage keys, or absolute paths for jobs queued before object storage
+        String inputKey = message.inputPath();
+        String outputKey = message.outputPath();
 
-        Path processedFile = Path.of(outputPath);
-        Path lockFile = Path.of(outputPath + ".lock");
+        boolean hls = outputFormat.equals(FORMAT_HLS);
+        String format = hls ? FORMAT_HLS : FORMAT_MP4;
 
-        if (Files.exists(processedFile)) {
-            log.info("Output file already exists for videoId: {}", message.videoId());
-            return;
-        }
+        // HLS output, artwork and segments go under keys named after the output file, without its extension
+        String baseKey = stripExtension(outputKey);
+        String publishKey = hls ? baseKey : outputKey;
+
+        String processedKey = hls ? VideoStorage.childKey(baseKey, HlsCommandBuilder.MASTER_PLAYLIST) : outputKey;
+        String artworkKey = baseKey + ".assets";
+        String lockKey = outputKey + ".lock";
+
+        boolean lockAcquired = false;
+        Path staged = null;
+        Path stagedArtwork = null;
 
         try {
-            // Lock file handling
-            try {
-                Files.createFile(lockFile);
-            } catch (FileAlreadyExistsException e) {
-                long lockAge = System.currentTimeMillis() - Files.getLastModifiedTime(lockFile).toMillis();
-
-                if (lockAge > TimeUnit.SECONDS.toMillis(120)) { // Slightly longer than process timeout
-                    log.warn("Stale lock detected for videoId: {}, removing and proceeding", message.videoId());
-                    Files.delete(lockFile);
-                    Files.createFile(lockFile);
-                } else {
-                    log.error("Lock file exists for videoId: {}, another worker is processing", message.videoId());
-                    throw new AmqpRejectAndDontRequeueException("Lock file exists for videoId: " + message.videoId());
+            if (videoStorage.exists(processedKey)) {
+                // The attempt that published it may have died before notifying, the backend ignores duplicates
+                log.info("Output file already exists for videoId: {}, notifying again", message.videoId());
+                boolean hasArtwork = videoStorage.exists(VideoStorage.childKey(artworkKey, ArtworkGenerator.POSTER));
+                notifyProcessed(message.videoId(), processedKey, format, hasArtwork ? artworkKey : null);
+                return;
+            }
+
+            String input = videoStorage.readLocation(inputKey);
+            MediaInfo mediaInfo = mediaProbe.probe(input);
+            Duration deadline = transcodeDeadlines.deadlineFor(mediaInfo, hls);
+
+            // HLS always needs the encoded ladder, a single MP4 may be a copy of compliant input streams
+            RemuxPolicy.Decision decision = hls ? new RemuxPolicy.Decision(false, "hls") : remuxPolicy.decide(mediaInfo);
+            Duration remuxTimeout = remuxPolicy.timeoutFor(deadline);
+            Duration lockBudget = lockBudget(decision.remux() ? remuxTimeout : Duration.ZERO, deadline);
+
+            // A lock is stale once its holder would have hit every timeout of the job and been killed
+            long lockExpiresAt = System.currentTimeMillis() + lockBudget.toMillis();
+
+            // Lock handling, creating the lock only succeeds if no other worker holds it
+            boolean locked = videoStorage.createIfAbsent(lockKey, String.valueOf(lockExpiresAt));
+
+            if (!locked && System.currentTimeMillis() > readLockExpiry(lockKey, lockBudget)) {
+                log.warn("Stale lock detected for videoId: {}, removing and proceeding", message.videoId());
+                videoStorage.delete(lockKey);
+                locked = videoStorage.createIfAbsent(lockKey, String.valueOf(lockExpiresAt));
+            }
+
+            if (!locked) {
+                log.error("Lock file exists for videoId: {}, another worker is processing", message.videoId());
+                throw new AmqpRejectAndDontRequeueException("Lock file exists for videoId: " + message.videoId());
+            }
+
+            lockAcquired = true;
+            staged = videoStorage.stagingPath(publishKey);
+
+            log.info("Transcoding videoId: {} ({}s, {}x{}, {}) with a deadline of {}s, path: {}",
+                    message.videoId(), Math.round(mediaInfo.durationSeconds()), mediaInfo.width(), mediaInfo.height(),
+                    mediaInfo.videoCodec(), deadline.toSeconds(), decision.remux() ? "remux" : "encode (" + decision.reason() + ")");
+
+            boolean remuxed = false;
+            if (decision.remux()) {
+                remuxed = tryRemux(input, staged, message, mediaInfo, remuxTimeout, format);
+
+                // Probing can miss problems only the muxer notices, the full encode still handles those
+                if (!remuxed) {
+                    decision = new RemuxPolicy.Decision(false, "remux_failed");
                 }
             }
 
-            // Start transcoding process
-            Process process = buildAndStartProcess(inputPath, outputPath);
+            // Recorded once the remux outcome is known, so failed remuxes count as encodes
+            transcodeMetrics.recordDecision(format, decision);
+
+            if (!remuxed && !hls && segmentedTranscoder.appliesTo(mediaInfo)) {
+                // Long videos are split into segments encoded in parallel, locally or by other workers
+                long startedAt = System.nanoTime();
+                segmentedTranscoder.transcode(message, input, mediaInfo, staged, baseKey + ".segments", deadline);
+                transcodeMetrics.recordFfmpeg(format, "segmented", "success", System.nanoTime() - startedAt);
+            } else if (!remuxed) {
+                List<String> command = hls
+                        ? buildHlsCommand(input, staged, mediaInfo)
+                        : buildCommand(input, staged);
 
-            boolean finished = process.waitFor(90, TimeUnit.SECONDS);
-            if (!finished && process.isAlive()) {
-                boolean died = process.destroyForcibly().waitFor(10, TimeUnit.SECONDS);
+                FfmpegRun encode = runFfmpeg(command, message, mediaInfo, deadline, format, "encode");
+                int exitCode = encode.process().exitValue();
 
-                if (!died) {
-                    log.error("Failed to terminate transcoding process for videoId: {}", message.videoId());
-                    throw new AmqpRejectAndDontRequeueException("Failed to terminate transcoding process for videoId: " + message.videoId());
+                if (exitCode != 0) {
+                    log.error("ffmpeg output for videoId: {}\n{}", message.videoId(), encode.process().errorTail());
+                    throw new RuntimeException("Transcoding failed for videoId: " + message.videoId() + " with exit code: " + exitCode);
                 }
 
-                throw new TimeoutException("Transcoding process timed out for videoId: " + message.videoId());
+                // Only encodes say anything about encode speed
+                transcodeDeadlines.recordCompletion(mediaInfo, hls, Duration.ofNanos(encode.elapsedNanos()));
             }
 
-            int exitCode = process.exitValue();
-            if (exitCode == 0) {
-                // Send success message to processed-videos queue
-                rabbitTemplate.convertAndSend("processed-videos", new ProcessedVideo(
-                        message.videoId(),
-                        outputPath
-                ));
-                log.info("Successfully transcoded videoId: {}", message.videoId());
-            } else {
-                throw new RuntimeException("Transcoding failed for videoId: " + message.videoId() + " with exit code: " + exitCode);
-            }
+            transcodeMetrics.recordSizes(format, inputSize(inputKey), staged);
+
+            // Poster, thumbnails and seek-preview sprite are produced in the same job, and published
+            // before the output, whose existence marks the job as done to a redelivery
+            stagedArtwork = videoStorage.stagingPath(artworkKey);
+            boolean hasArtwork = artworkGenerator.generate(input, stagedArtwork, mediaInfo, message.videoId())
+                    && publishArtwork(artworkKey, stagedArtwork, message.videoId());
+
+            // Publish the finished output in one step so a partial one is never served
+            videoStorage.publish(publishKey, staged);
+
+            notifyProcessed(message.videoId(), processedKey, format, hasArtwork ? artworkKey : null);
+            log.info("Successfully transcoded videoId: {}", message.videoId());
         } catch (IllegalStateException | FileNotFoundException e) {
             // Non-retryable errors
             log.error("Non-retryable error for videoId: {} - {}", message.videoId(), e.getMessage());
@@ -97,29 +200,202 @@ public class TranscodeListener {
             log.error("Unexpected error processing videoId: {} - {}", message.videoId(), e.getMessage(), e);
             throw new RuntimeException("Unexpected error for videoId: " + message.videoId(), e);
         } finally {
-            // Cleanup lock file
-            try {
-                Files.deleteIfExists(lockFile);
-            } catch (IOException e) {
-                log.warn("Failed to delete lock file for videoId: {}", message.videoId(), e);
+            // Whatever is still staged was not published, e.g. output of a killed or failed ffmpeg
+            if (staged != null) {
+                Directories.deleteRecursively(staged);
+            }
+            if (stagedArtwork != null) {
+                Directories.deleteRecursively(stagedArtwork);
+            }
+
+            // Cleanup lock, unless it belongs to another worker
+            if (lockAcquired) {
+                try {
+                    videoStorage.delete(lockKey);
+                } catch (IOException e) {
+                    log.warn("Failed to delete lock file for videoId: {}", message.videoId(), e);
+                }
             }
         }
     }
 
-    private Process buildAndStartProcess(String inputPath, String outputPath) throws IOException {
-        ProcessBuilder processBuilder = new ProcessBuilder(
+    private List<String> buildCommand(String inputPath, Path outputPath) throws IOException {
+        // Start from scratch in case a previous attempt left a partial file behind
+        Files.deleteIfExists(outputPath);
+
+        return List.of(
                 "ffmpeg",
                 "-i", inputPath,
                 "-c:v", "libx264",
-                "-preset", "fast",
+                "-preset", preset,
                 "-crf", "22",
                 "-c:a", "aac",
                 "-b:a", "128k",
+                "-threads", String.valueOf(transcodeSlots.getThreadsPerJob()),
                 "-movflags", "+faststart",
-                outputPath
+                outputPath.toString()
         );
+    }
+
+    // Copies the streams into a faststart MP4, only the container is rewritten
+    private List<String> buildRemuxCommand(String inputPath, Path outputPath, MediaInfo mediaInfo) throws IOException {
+        Files.deleteIfExists(outputPath);
+
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg",
+                "-i", inputPath,
+                "-map", "0:v:0"
+        ));
+
+        if (mediaInfo.hasAudio()) {
+            command.addAll(List.of("-map", "0:a:0"));
+        }
+
+        command.addAll(List.of(
+                "-c", "copy",
+                "-movflags", "+faststart",
+                outputPath.toString()
+        ));
+
+        return command;
+    }
+
+    private List<String> buildHlsCommand(String inputPath, Path outputDir, MediaInfo mediaInfo) throws IOException {
+        // Start from an empty directory in case a previous attempt left segments behind
+        Directories.deleteRecursively(outputDir);
+        for (int i = 0; i < hlsCommandBuilder.renditionCount(mediaInfo); i++) {
+            Files.createDirectories(outputDir.resolve("v" + i));
+        }
+
+        return hlsCommandBuilder.build(inputPath, outputDir, mediaInfo);
+    }
+
+    /**
+     * Runs ffmpeg to completion within the deadline, killing it if it overruns.
+     */
+    private FfmpegRun runFfmpeg(List<String> command, TranscodeJob message, MediaInfo mediaInfo, Duration deadline,
+                                String format, String mode) throws IOException, InterruptedException, TimeoutException {
+        long startedAt = System.nanoTime();
+        FfmpegProcess process = FfmpegProcess.start(command, progressPublisher.forJob(message, mediaInfo.durationSeconds()));
+
+        boolean finished;
+        try {
+            finished = process.waitFor(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // Do not leave an orphaned ffmpeg behind if the slot is torn down
+            process.destroyForcibly();
+            throw e;
+        }
+
+        if (!finished && process.isAlive()) {
+            boolean died = process.destroyForcibly().waitFor(KILL_GRACE_SECONDS, TimeUnit.SECONDS);
+
+            if (!died) {
+                log.error("Failed to terminate transcoding process for videoId: {}", message.videoId());
+                throw new AmqpRejectAndDontRequeueException("Failed to terminate transcoding process for videoId: " + message.videoId());
+            }
+
+            transcodeMetrics.recordFfmpeg(format, mode, "timeout", System.nanoTime() - startedAt);
+            throw new TimeoutException("Transcoding process timed out for videoId: " + message.videoId());
+        }
+
+        long elapsedNanos = System.nanoTime() - startedAt;
+        transcodeMetrics.recordFfmpeg(format, mode, process.exitValue() == 0 ? "success" : "failed", elapsedNanos);
+
+        return new FfmpegRun(process, elapsedNanos);
+    }
+
+    private record FfmpegRun(FfmpegProcess process, long elapsedNanos) {
+    }
+
+    /**
+     * Copies the input streams into the output within the remux timeout.
+     *
+     * @return false if the remux failed or timed out, and the input has to be encoded
+     */
+    private boolean tryRemux(String input, Path staged, TranscodeJob message, MediaInfo mediaInfo, Duration timeout,
+                             String format) throws IOException, InterruptedException {
+        try {
+            FfmpegRun remux = runFfmpeg(buildRemuxCommand(input, staged, mediaInfo), message, mediaInfo, timeout, format, "remux");
+
+            if (remux.process().exitValue() != 0) {
+                log.warn("Remux failed for videoId: {}, falling back to a full encode\n{}", message.videoId(), remux.process().errorTail());
+                return false;
+            }
+
+            return true;
+        } catch (TimeoutException e) {
+            log.warn("Remux timed out after {}s for videoId: {}, falling back to a full encode", timeout.toSeconds(), message.videoId());
+            return false;
+        }
+    }
+
+    private void notifyProcessed(String videoId, String processedKey, String format, String artworkKey) {
+        rabbitTemplate.convertAndSend("processed-videos", new ProcessedVideo(videoId, processedKey, format, artworkKey));
+    }
+
+    // Artwork is optional, failing to publish it does not fail the transcode
+    private boolean publishArtwork(String artworkKey, Path stagedArtwork, String videoId) {
+        try {
+            videoStorage.publish(artworkKey, stagedArtwork);
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to publish artwork for videoId: {} - {}", videoId, e.getMessage());
+            return false;
+        }
+    }
+
+    // Only used for metrics, so a failed lookup is reported as unknown
+    private long inputSize(String inputKey) {
+        try {
+            return videoStorage.size(inputKey);
+        } catch (IOException e) {
+            log.warn("Failed to read input size of {}", inputKey, e);
+            return -1;
+        }
+    }
+
+    /**
+     * The longest a job may hold its lock: every ffmpeg run at its timeout plus the kill grace,
+     * artwork generation and publishing. A failed remux is followed by a full encode.
+     *
+     * @param remuxTimeout zero if no remux is attempted
+     */
+    private Duration lockBudget(Duration remuxTimeout, Duration deadline) {
+        Duration budget = deadline.plusSeconds(KILL_GRACE_SECONDS)
+                .plus(artworkGenerator.timeBudget())
+                .plus(publishTime);
+
+        return remuxTimeout.isZero() ? budget : budget.plus(remuxTimeout).plusSeconds(KILL_GRACE_SECONDS);
+    }
+
+    /**
+     * Reads the expiry the lock holder wrote into the lock, falling back to the lock's
+     * modification time plus our own lock budget if it has not been written yet. A lock that
+     * vanished in the meantime is reported as expired.
+     */
+    private long readLockExpiry(String lockKey, Duration lockBudget) throws IOException {
+        Optional<String> content = videoStorage.readString(lockKey);
+
+        if (content.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            if (!content.get().isBlank()) {
+                return Long.parseLong(content.get().trim());
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Unreadable lock file {}", lockKey);
+        }
+
+        return videoStorage.lastModified(lockKey) + lockBudget.toMillis();
+    }
+
+    private String stripExtension(String path) {
+        int dotIndex = path.lastIndexOf('.');
+        int slashIndex = path.lastIndexOf('/');
 
-        processBuilder.redirectErrorStream(true);
-        return processBuilder.start();
+        return dotIndex > slashIndex ? path.substring(0, dotIndex) : path;
     }
 }
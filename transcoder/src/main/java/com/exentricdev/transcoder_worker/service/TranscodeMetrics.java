@@ -0,0 +1,103 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.dto.TranscodeJob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for sizing the transcoder fleet: how long jobs wait in the queue, how long ffmpeg
+ * runs for them and how much output they produce relative to their input.
+ */
+@Component
+public class TranscodeMetrics {
+    private static final Logger log = LoggerFactory.getLogger(TranscodeMetrics.class);
+
+    private final Timer queueWait;
+    private final Meter.MeterProvider<Timer> ffmpegDuration;
+    private final Meter.MeterProvider<DistributionSummary> sizeRatio;
+    private final Meter.MeterProvider<Counter> paths;
+    private final Meter.MeterProvider<Timer> segmentDuration;
+
+    public TranscodeMetrics(MeterRegistry meterRegistry) {
+        this.queueWait = Timer.builder("transcoder.queue.wait")
+                .description("Time from a job being published to a worker picking it up")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.ffmpegDuration = Timer.builder("transcoder.ffmpeg.duration")
+                .description("Wall time of the ffmpeg transcode process")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.sizeRatio = DistributionSummary.builder("transcoder.output.size.ratio")
+                .description("Transcoded output size divided by the input size")
+                .withRegistry(meterRegistry);
+        this.paths = Counter.builder("transcoder.path")
+                .description("Jobs by processing path, with the reason a job was not remuxed")
+                .withRegistry(meterRegistry);
+        this.segmentDuration = Timer.builder("transcoder.segment.duration")
+                .description("Wall time of encoding one segment of a segmented transcode")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+    }
+
+    public void recordReceived(TranscodeJob job) {
+        if (job.publishedAt() == null) {
+            return;
+        }
+
+        // Clock skew between the backend and this worker can make the wait appear negative
+        Duration wait = Duration.between(job.publishedAt(), Instant.now());
+        queueWait.record(wait.isNegative() ? Duration.ZERO : wait);
+    }
+
+    /**
+     * @param mode    "encode", "remux" or "segmented"
+     * @param outcome "success", "failed" or "timeout"
+     */
+    public void recordFfmpeg(String format, String mode, String outcome, long elapsedNanos) {
+        ffmpegDuration.withTags("format", format, "mode", mode, "outcome", outcome).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param dispatch "local" or "queue"
+     * @param outcome  "success" or "failed", a failed segment is retried on its own
+     */
+    public void recordSegment(String dispatch, String outcome, long elapsedNanos) {
+        segmentDuration.withTags("dispatch", dispatch, "outcome", outcome).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDecision(String format, RemuxPolicy.Decision decision) {
+        paths.withTags("format", format, "mode", decision.remux() ? "remux" : "encode", "reason", decision.reason()).increment();
+    }
+
+    /**
+     * Records the output to input size ratio. The output may be a single file or an HLS
+     * directory. Failing to measure is logged, never fatal to the job.
+     *
+     * @param inputBytes size of the raw upload, not positive if it is unknown
+     */
+    public void recordSizes(String format, long inputBytes, Path output) {
+        try {
+            long outputBytes = Files.isDirectory(output) ? Directories.size(output) : Files.size(output);
+
+            if (inputBytes > 0) {
+                sizeRatio.withTags("format", format).record((double) outputBytes / inputBytes);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Failed to measure output size of {}", output, e);
+        }
+    }
+}
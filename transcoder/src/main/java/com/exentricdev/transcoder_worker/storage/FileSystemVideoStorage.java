@@ -0,0 +1,127 @@
+package com.exentricdev.transcoder_worker.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes videos on the volume shared with the backend. Output is staged next to its
+ * final location, so publishing it is a single atomic rename.
+ */
+@Component
+@ConditionalOnProperty(name = "transcoder.storage.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemVideoStorage implements VideoStorage {
+    private final Path root;
+
+    public FileSystemVideoStorage(@Value("${transcoder.storage.root:/uploads}") String root) {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String readLocation(String key) throws IOException {
+        Path path = resolve(key);
+
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException("Input file not found: " + path);
+        }
+
+        return path.toString();
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(resolve(key));
+    }
+
+    @Override
+    public Path stagingPath(String key) throws IOException {
+        Path path = resolve(key);
+        Files.createDirectories(path.getParent());
+
+        // Keeps the extension, ffmpeg picks the output format from it
+        return path.resolveSibling(".staging-" + path.getFileName());
+    }
+
+    @Override
+    public void publish(String key, Path staged) throws IOException {
+        Path path = resolve(key);
+        Files.createDirectories(path.getParent());
+
+        if (Files.isDirectory(path)) {
+            deleteTree(path);
+        }
+
+        Files.move(staged, path, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public boolean createIfAbsent(String key, String content) throws IOException {
+        try {
+            Files.writeString(resolve(key), content, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Optional<String> readString(String key) throws IOException {
+        Path path = resolve(key);
+        return Files.exists(path) ? Optional.of(Files.readString(path)) : Optional.empty();
+    }
+
+    @Override
+    public long lastModified(String key) throws IOException {
+        return Files.getLastModifiedTime(resolve(key)).toMillis();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public void deleteTree(String key) throws IOException {
+        Path dir = resolve(key);
+
+        if (Files.exists(dir)) {
+            deleteTree(dir);
+        }
+    }
+
+    // Absolute keys of older jobs resolve to themselves
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+
+        if (!Path.of(key).isAbsolute() && !path.startsWith(root)) {
+            throw new IllegalStateException("Storage key escapes the upload directory: " + key);
+        }
+
+        return path;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.exentricdev.transcoder_worker.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * Reads raw uploads from an S3-compatible bucket and publishes output to it. ffmpeg reads the
+ * input through a presigned URL, seeking with ranged requests, so it is never copied to local
+ * disk first. Output is written to a local scratch directory and uploaded with the transfer
+ * manager, which splits large files into parts uploaded in parallel.
+ */
+@Component
+@ConditionalOnProperty(name = "transcoder.storage.type", havingValue = "s3")
+public class S3VideoStorage implements VideoStorage {
+    // S3 answers a conditional write that lost the race with one of these
+    private static final int PRECONDITION_FAILED = 412;
+    private static final int CONFLICT = 409;
+
+    // S3 accepts at most this many keys per DeleteObjects request
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+    private final S3TransferManager transferManager;
+    private final String bucket;
+    private final Path scratchDir;
+    private final Duration presignTtl;
+
+    public S3VideoStorage(S3Client s3Client, S3Presigner s3Presigner, S3TransferManager transferManager,
+                          @Value("${transcoder.storage.s3.bucket}") String bucket,
+                          @Value("${transcoder.storage.scratch-dir:${java.io.tmpdir}/transcoder}") String scratchDir,
+                          @Value("${transcoder.storage.s3.presign-ttl:6h}") Duration presignTtl) {
+        this.s3Client = s3Client;
+        this.s3Presigner = s3Presigner;
+        this.transferManager = transferManager;
+        this.bucket = bucket;
+        this.scratchDir = Path.of(scratchDir).toAbsolutePath().normalize();
+        this.presignTtl = presignTtl;
+    }
+
+    @Override
+    public String readLocation(String key) throws IOException {
+        if (head(key).isEmpty()) {
+            throw new FileNotFoundException("Input object not found: " + key);
+        }
+
+        // Must outlive the longest transcode deadline, ffmpeg keeps issuing range requests
+        return s3Presigner.presignGetObject(r -> r
+                        .signatureDuration(presignTtl)
+                        .getObjectRequest(get -> get.bucket(bucket).key(objectKey(key))))
+                .url()
+                .toString();
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return head(key).isPresent();
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return head(key)
+                .orElseThrow(() -> new FileNotFoundException("Object not found: " + key))
+                .contentLength();
+    }
+
+    @Override
+    public Path stagingPath(String key) throws IOException {
+        Path path = scratchDir.resolve(objectKey(key)).normalize();
+
+        if (!path.startsWith(scratchDir)) {
+            throw new IllegalStateException("Storage key escapes the scratch directory: " + key);
+        }
+
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    @Override
+    public void publish(String key, Path staged) throws IOException {
+        String objectKey = objectKey(key);
+
+        try {
+            if (!Files.isDirectory(staged)) {
+                transferManager.uploadFile(r -> r
+                                .source(staged)
+                                .putObjectRequest(put -> put.bucket(bucket).key(objectKey)))
+                        .completionFuture()
+                        .join();
+                return;
+            }
+
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(staged)) {
+                files = walk.filter(Files::isRegularFile).toList();
+            }
+
+            // Nested files before the top-level ones that reference them, so the master
+            // playlist never appears before its variants and segments
+            uploadFiles(staged, objectKey, files.stream().filter(path -> !path.getParent().equals(staged)).toList());
+            uploadFiles(staged, objectKey, files.stream().filter(path -> path.getParent().equals(staged)).toList());
+        } catch (CompletionException e) {
+            throw new IOException("Failed to upload " + key, e.getCause());
+        }
+    }
+
+    @Override
+    public boolean createIfAbsent(String key, String content) throws IOException {
+        try {
+            s3Client.putObject(r -> r.bucket(bucket).key(objectKey(key)).ifNoneMatch("*"),
+                    RequestBody.fromString(content, StandardCharsets.UTF_8));
+            return true;
+        } catch (S3Exception e) {
+            if (e.statusCode() == PRECONDITION_FAILED || e.statusCode() == CONFLICT) {
+                return false;
+            }
+
+            throw new IOException("Failed to create " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<String> readString(String key) throws IOException {
+        try {
+            return Optional.of(s3Client.getObjectAsBytes(r -> r.bucket(bucket).key(objectKey(key))).asUtf8String());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+
+            throw new IOException("Failed to read " + key, e);
+        }
+    }
+
+    @Override
+    public long lastModified(String key) throws IOException {
+        return head(key)
+                .orElseThrow(() -> new FileNotFoundException("Object not found: " + key))
+                .lastModified()
+                .toEpochMilli();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3Client.deleteObject(r -> r.bucket(bucket).key(objectKey(key)));
+        } catch (S3Exception e) {
+            throw new IOException("Failed to delete " + key, e);
+        }
+    }
+
+    @Override
+    public void deleteTree(String key) throws IOException {
+        String prefix = objectKey(key) + "/";
+
+        try {
+            List<ObjectIdentifier> objects = s3Client.listObjectsV2Paginator(r -> r.bucket(bucket).prefix(prefix))
+                    .contents().stream()
+                    .map(S3Object::key)
+                    .map(objectKey -> ObjectIdentifier.builder().key(objectKey).build())
+                    .toList();
+
+            for (int i = 0; i < objects.size(); i += DELETE_BATCH_SIZE) {
+                Delete batch = Delete.builder()
+                        .objects(objects.subList(i, Math.min(objects.size(), i + DELETE_BATCH_SIZE)))
+                        .quiet(true)
+                        .build();
+
+                s3Client.deleteObjects(r -> r.bucket(bucket).delete(batch));
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Failed to delete " + prefix, e);
+        }
+    }
+
+    // Uploads the files in parallel, each under its path relative to the staged directory
+    private void uploadFiles(Path staged, String objectKey, List<Path> files) {
+        CompletableFuture<?>[] uploads = files.stream()
+                .map(file -> transferManager.uploadFile(r -> r
+                                .source(file)
+                                .putObjectRequest(put -> put.bucket(bucket).key(objectKey + "/" + relativeKey(staged, file))))
+                        .completionFuture())
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(uploads).join();
+    }
+
+    private static String relativeKey(Path staged, Path file) {
+        return staged.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    private Optional<HeadObjectResponse> head(String key) throws IOException {
+        try {
+            return Optional.of(s3Client.headObject(r -> r.bucket(bucket).key(objectKey(key))));
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+
+            throw new IOException("Failed to look up " + key, e);
+        }
+    }
+
+    // Keys of jobs queued before object storage are absolute paths
+    private static String objectKey(String key) {
+        return key.startsWith("/") ? key.substring(1) : key;
+    }
+}
@@ -0,0 +1,58 @@
+package com.exentricdev.transcoder_worker.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where raw uploads are read from and transcoded output is published to, addressed by the
+ * keys the backend puts in a {@code TranscodeJob}. Jobs queued before this abstraction carry
+ * absolute paths on the shared volume, which the filesystem storage resolves as they are.
+ */
+public interface VideoStorage {
+    /**
+     * A path or URL ffmpeg and ffprobe can read the object from.
+     *
+     * @throws java.io.FileNotFoundException if there is no such object
+     */
+    String readLocation(String key) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    long size(String key) throws IOException;
+
+    /**
+     * A local path to write output for the key to before {@link #publish} makes it visible.
+     * Its parent directory exists, the path itself may be left over from an earlier attempt.
+     */
+    Path stagingPath(String key) throws IOException;
+
+    /**
+     * Makes a staged file or directory visible under the key, replacing what is there. Files of
+     * a directory are published before its top-level files, so a top-level index such as an HLS
+     * master playlist only appears once everything it references is readable.
+     */
+    void publish(String key, Path staged) throws IOException;
+
+    /**
+     * Creates a small object only if nothing exists under the key yet, as used for job locks.
+     *
+     * @return false if the object already exists
+     */
+    boolean createIfAbsent(String key, String content) throws IOException;
+
+    Optional<String> readString(String key) throws IOException;
+
+    long lastModified(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Deletes every object below the key, e.g. the segments of a segmented transcode.
+     */
+    void deleteTree(String key) throws IOException;
+
+    static String childKey(String parent, String name) {
+        return parent.isEmpty() ? name : parent + "/" + name;
+    }
+}
@@ -0,0 +1,105 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.config.TranscodeSlots;
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import com.exentricdev.transcoder_worker.service.HlsCommandBuilder.Rendition;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HlsCommandBuilderTests {
+    private static final Path OUTPUT = Path.of("/tmp/hls");
+
+    @Test
+    void encodesWholeLadderFromOneDecode() {
+        List<String> command = builder("fmp4").build("input.mp4", OUTPUT, video(1920, 1080, true));
+
+        assertThat(argument(command, "-filter_complex")).isEqualTo(
+                "[0:v]split=4[v0][v1][v2][v3]"
+                        + ";[v0]scale=-2:1080[v0out];[v1]scale=-2:720[v1out];[v2]scale=-2:480[v2out];[v3]scale=-2:360[v3out]");
+        assertThat(argument(command, "-var_stream_map")).isEqualTo("v:0,a:0 v:1,a:1 v:2,a:2 v:3,a:3");
+        assertThat(command).containsSubsequence("-map", "[v0out]", "-c:v:0", "libx264", "-b:v:0", "5000k",
+                "-maxrate:v:0", "5350k", "-bufsize:v:0", "7500k");
+        assertThat(command).containsSubsequence("-map", "0:a:0", "-c:a:3", "aac", "-b:a:3", "128k");
+    }
+
+    @Test
+    void writesFragmentedMp4Segments() {
+        List<String> command = builder("fmp4").build("input.mp4", OUTPUT, video(1920, 1080, true));
+
+        assertThat(argument(command, "-hls_segment_type")).isEqualTo("fmp4");
+        assertThat(argument(command, "-hls_fmp4_init_filename")).isEqualTo("init.mp4");
+        assertThat(argument(command, "-hls_segment_filename")).isEqualTo(OUTPUT.resolve("v%v/seg_%05d.m4s").toString());
+        assertThat(argument(command, "-master_pl_name")).isEqualTo(HlsCommandBuilder.MASTER_PLAYLIST);
+        assertThat(command.get(command.size() - 1)).isEqualTo(OUTPUT.resolve("v%v/index.m3u8").toString());
+    }
+
+    @Test
+    void writesTransportStreamSegments() {
+        List<String> command = builder("mpegts").build("input.mp4", OUTPUT, video(1920, 1080, true));
+
+        assertThat(argument(command, "-hls_segment_type")).isEqualTo("mpegts");
+        assertThat(command).doesNotContain("-hls_fmp4_init_filename");
+        assertThat(argument(command, "-hls_segment_filename")).endsWith("seg_%05d.ts");
+    }
+
+    @Test
+    void leavesOutAudioForSilentInput() {
+        List<String> command = builder("fmp4").build("input.mp4", OUTPUT, video(1280, 720, false));
+
+        assertThat(command).doesNotContain("0:a:0");
+        assertThat(argument(command, "-var_stream_map")).isEqualTo("v:0 v:1 v:2");
+    }
+
+    @Test
+    void neverUpscales() {
+        assertThat(builder("fmp4").renditions(video(1280, 720, true)))
+                .containsExactly(new Rendition(720, 2800), new Rendition(480, 1400), new Rendition(360, 800));
+    }
+
+    @Test
+    void keepsLowestRungForSmallInput() {
+        HlsCommandBuilder builder = builder("fmp4");
+
+        assertThat(builder.renditions(video(320, 241, true))).containsExactly(new Rendition(240, 800));
+        assertThat(builder.renditionCount(video(320, 241, true))).isEqualTo(1);
+    }
+
+    @Test
+    void usesWholeLadderForUnknownHeight() {
+        assertThat(builder("fmp4").renditionCount(video(0, 0, true))).isEqualTo(4);
+    }
+
+    @Test
+    void rejectsEmptyLadder() {
+        HlsCommandBuilder builder = builder("fmp4");
+        ReflectionTestUtils.setField(builder, "ladder", " , ");
+
+        assertThatThrownBy(() -> builder.renditions(video(1920, 1080, true)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static String argument(List<String> command, String flag) {
+        return command.get(command.indexOf(flag) + 1);
+    }
+
+    private static MediaInfo video(int width, int height, boolean hasAudio) {
+        return new MediaInfo(width, height, hasAudio, 60, "mov,mp4", "h264", "High", "yuv420p", 6_000_000,
+                hasAudio ? "aac" : null);
+    }
+
+    private static HlsCommandBuilder builder(String segmentType) {
+        HlsCommandBuilder builder = new HlsCommandBuilder(new TranscodeSlots(1));
+        ReflectionTestUtils.setField(builder, "ladder", "1080:5000,720:2800,480:1400,360:800");
+        ReflectionTestUtils.setField(builder, "segmentSeconds", 4);
+        ReflectionTestUtils.setField(builder, "segmentType", segmentType);
+        ReflectionTestUtils.setField(builder, "audioBitrate", "128k");
+        ReflectionTestUtils.setField(builder, "preset", "fast");
+        return builder;
+    }
+}
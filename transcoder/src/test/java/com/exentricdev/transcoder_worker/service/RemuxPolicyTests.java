@@ -0,0 +1,73 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RemuxPolicyTests {
+    // What ffprobe reports for a typical phone recording
+    private static final MediaInfo PHONE_VIDEO = new MediaInfo(1920, 1080, true, 30,
+            "mov,mp4,m4a,3gp,3g2,mj2", "h264", "High", "yuv420p", 6_000_000, "aac");
+
+    private final RemuxPolicy policy = policy(true);
+
+    @Test
+    void remuxesCompliantInput() {
+        assertThat(policy.decide(PHONE_VIDEO)).isEqualTo(new RemuxPolicy.Decision(true, RemuxPolicy.COMPLIANT));
+    }
+
+    @Test
+    void remuxesPortraitAndSilentInput() {
+        MediaInfo portrait = new MediaInfo(1080, 1920, false, 30,
+                "mov,mp4,m4a,3gp,3g2,mj2", "h264", "Main", "yuvj420p", 6_000_000, null);
+
+        assertThat(policy.decide(portrait).remux()).isTrue();
+    }
+
+    @Test
+    void encodesWhenDisabled() {
+        assertThat(policy(false).decide(PHONE_VIDEO).reason()).isEqualTo("disabled");
+    }
+
+    @Test
+    void reportsFirstFailedCheck() {
+        assertThat(reason(with("matroska,webm", "h264", "High", "yuv420p", 1920, 1080, 6_000_000, "aac"))).isEqualTo("container");
+        assertThat(reason(with("mov,mp4", "hevc", "Main", "yuv420p", 1920, 1080, 6_000_000, "aac"))).isEqualTo("video_codec");
+        assertThat(reason(with("mov,mp4", "h264", "High 4:4:4 Predictive", "yuv420p", 1920, 1080, 6_000_000, "aac"))).isEqualTo("profile");
+        assertThat(reason(with("mov,mp4", "h264", "High", "yuv420p10le", 1920, 1080, 6_000_000, "aac"))).isEqualTo("pixel_format");
+        assertThat(reason(with("mov,mp4", "h264", "High", "yuv420p", 3840, 2160, 6_000_000, "aac"))).isEqualTo("resolution");
+        assertThat(reason(with("mov,mp4", "h264", "High", "yuv420p", 0, 0, 6_000_000, "aac"))).isEqualTo("resolution");
+        assertThat(reason(with("mov,mp4", "h264", "High", "yuv420p", 1920, 1080, 20_000_000, "aac"))).isEqualTo("bitrate");
+        assertThat(reason(with("mov,mp4", "h264", "High", "yuv420p", 1920, 1080, 0, "aac"))).isEqualTo("bitrate");
+        assertThat(reason(with("mov,mp4", "h264", "High", "yuv420p", 1920, 1080, 6_000_000, "opus"))).isEqualTo("audio_codec");
+    }
+
+    @Test
+    void remuxTimeoutIsFractionOfDeadline() {
+        assertThat(policy.timeoutFor(Duration.ofMinutes(20))).isEqualTo(Duration.ofMinutes(2));
+    }
+
+    @Test
+    void remuxTimeoutIsClampedToMinimumAndDeadline() {
+        assertThat(policy.timeoutFor(Duration.ofMinutes(2))).isEqualTo(Duration.ofSeconds(30));
+        assertThat(policy.timeoutFor(Duration.ofSeconds(10))).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    private String reason(MediaInfo mediaInfo) {
+        return policy.decide(mediaInfo).reason();
+    }
+
+    private static MediaInfo with(String container, String videoCodec, String profile, String pixelFormat,
+                                  int width, int height, long videoBitrate, String audioCodec) {
+        return new MediaInfo(width, height, true, 30, container, videoCodec, profile, pixelFormat, videoBitrate, audioCodec);
+    }
+
+    private static RemuxPolicy policy(boolean enabled) {
+        return new RemuxPolicy(enabled, List.of("Constrained Baseline", "Baseline", "Main", "High"), 1080, 8000,
+                0.1, Duration.ofSeconds(30));
+    }
+}
@@ -0,0 +1,92 @@
+package com.exentricdev.transcoder_worker.service;
+
+import com.exentricdev.transcoder_worker.config.TranscodeSlots;
+import com.exentricdev.transcoder_worker.dto.MediaInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TranscodeDeadlinesTests {
+    private static final String PRESET_SPEEDS = "veryfast:4,fast:2,slow:0.8";
+    private static final Duration OVERHEAD = Duration.ofSeconds(15);
+    private static final Duration MIN = Duration.ofSeconds(90);
+    private static final Duration MAX = Duration.ofHours(4);
+
+    @Test
+    void scalesWithDurationOverPresetSpeed() {
+        // 600s of 1080p at 2x, three times over, plus the overhead
+        assertThat(deadlines("fast").deadlineFor(video(1920, 1080, 600), false)).isEqualTo(Duration.ofSeconds(915));
+        assertThat(deadlines("veryfast").deadlineFor(video(1920, 1080, 600), false)).isEqualTo(Duration.ofSeconds(465));
+    }
+
+    @Test
+    void scalesWithOutputPixels() {
+        assertThat(deadlines("fast").deadlineFor(video(960, 540, 600), false)).isEqualTo(Duration.ofSeconds(240));
+    }
+
+    @Test
+    void chargesHlsForEveryRendition() {
+        TranscodeDeadlines deadlines = deadlines("fast");
+
+        double mp4Millis = deadlines.deadlineFor(video(1920, 1080, 600), false).minus(OVERHEAD).toMillis();
+        double hlsMillis = deadlines.deadlineFor(video(1920, 1080, 600), true).minus(OVERHEAD).toMillis();
+
+        // 1080p, 720p, 480p and 360p relative to 1080p alone
+        double ladder = (1080.0 * 1080 + 720 * 720 + 480 * 480 + 360 * 360) / (1080.0 * 1080);
+        assertThat(hlsMillis / mp4Millis).isCloseTo(ladder, within(0.001));
+    }
+
+    @Test
+    void clampsToMinimumAndMaximum() {
+        TranscodeDeadlines deadlines = deadlines("fast");
+
+        assertThat(deadlines.deadlineFor(video(1920, 1080, 5), false)).isEqualTo(MIN);
+        assertThat(deadlines.deadlineFor(video(3840, 2160, 36_000), false)).isEqualTo(MAX);
+    }
+
+    @Test
+    void unknownDurationGetsMaximum() {
+        assertThat(deadlines("fast").deadlineFor(video(1920, 1080, 0), false)).isEqualTo(MAX);
+    }
+
+    @Test
+    void unknownPresetAssumesRealTime() {
+        assertThat(deadlines("placebo").deadlineFor(video(1920, 1080, 600), false)).isEqualTo(Duration.ofSeconds(1815));
+    }
+
+    @Test
+    void learnsFromMeasuredSpeed() {
+        TranscodeDeadlines deadlines = deadlines("fast");
+
+        // 6x observed moves the 2x estimate a fifth of the way, to 2.8x
+        deadlines.recordCompletion(video(1920, 1080, 60), false, Duration.ofSeconds(10));
+
+        long expected = OVERHEAD.toMillis() + Math.round(600 / 2.8 * 3 * 1000);
+        assertThat(deadlines.deadlineFor(video(1920, 1080, 600), false).toMillis()).isCloseTo(expected, within(1L));
+    }
+
+    @Test
+    void ignoresShortSamples() {
+        TranscodeDeadlines deadlines = deadlines("fast");
+
+        deadlines.recordCompletion(video(1920, 1080, 3), false, Duration.ofMillis(100));
+        deadlines.recordCompletion(video(1920, 1080, 60), false, Duration.ZERO);
+
+        assertThat(deadlines.deadlineFor(video(1920, 1080, 600), false)).isEqualTo(Duration.ofSeconds(915));
+    }
+
+    private static MediaInfo video(int width, int height, double durationSeconds) {
+        return new MediaInfo(width, height, true, durationSeconds, "mov,mp4", "h264", "High", "yuv420p", 6_000_000, "aac");
+    }
+
+    private static TranscodeDeadlines deadlines(String preset) {
+        HlsCommandBuilder hlsCommandBuilder = new HlsCommandBuilder(new TranscodeSlots(1));
+        ReflectionTestUtils.setField(hlsCommandBuilder, "ladder", "1080:5000,720:2800,480:1400,360:800");
+
+        return new TranscodeDeadlines(preset, PRESET_SPEEDS, 3.0, OVERHEAD, MIN, MAX, hlsCommandBuilder);
+    }
+}
@@ -0,0 +1,92 @@
+package com.exentricdev.transcoder_worker.storage;
+
+import com.exentricdev.transcoder_worker.config.S3StorageConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against a real S3-compatible bucket, e.g. the MinIO of the compose "s3" profile:
+ * <pre>
+ * S3_TEST_ENDPOINT=http://localhost:9000 S3_ACCESS_KEY=... S3_SECRET_KEY=... mvn test
+ * </pre>
+ */
+@SpringBootTest(classes = {S3StorageConfig.class, S3VideoStorage.class}, properties = {
+        "transcoder.storage.type=s3",
+        "transcoder.storage.s3.endpoint=${S3_TEST_ENDPOINT}",
+        "transcoder.storage.s3.bucket=${S3_TEST_BUCKET:clipshare}"
+})
+@EnabledIfEnvironmentVariable(named = "S3_TEST_ENDPOINT", matches = ".+")
+class S3VideoStorageTests {
+    @Autowired
+    private S3VideoStorage storage;
+
+    @TempDir
+    private Path staging;
+
+    private final String root = "s3-video-storage-tests/" + UUID.randomUUID();
+
+    @AfterEach
+    void deleteObjects() throws IOException {
+        storage.deleteTree(root);
+    }
+
+    @Test
+    void publishesDirectoryWithNestedFiles() throws IOException {
+        Files.createDirectories(staging.resolve("v0"));
+        Files.writeString(staging.resolve("v0/seg_000.m4s"), "segment");
+        Files.writeString(staging.resolve("v0/index.m3u8"), "#EXTM3U variant");
+        Files.writeString(staging.resolve("master.m3u8"), "#EXTM3U master");
+
+        String key = VideoStorage.childKey(root, "hls");
+        storage.publish(key, staging);
+
+        assertThat(storage.readString(VideoStorage.childKey(key, "master.m3u8"))).contains("#EXTM3U master");
+        assertThat(storage.readString(VideoStorage.childKey(key, "v0/index.m3u8"))).contains("#EXTM3U variant");
+        assertThat(storage.size(VideoStorage.childKey(key, "v0/seg_000.m4s"))).isEqualTo("segment".length());
+    }
+
+    @Test
+    void publishesSingleFileReadableThroughPresignedUrl() throws Exception {
+        Path file = Files.writeString(staging.resolve("video.mp4"), "0123456789");
+        String key = VideoStorage.childKey(root, "video.mp4");
+
+        storage.publish(key, file);
+
+        // ffmpeg seeks in the input with ranged requests against this URL
+        HttpRequest request = HttpRequest.newBuilder(URI.create(storage.readLocation(key)))
+                .header("Range", "bytes=2-5")
+                .build();
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(206);
+        assertThat(response.body()).isEqualTo("2345");
+        assertThat(storage.lastModified(key)).isPositive();
+    }
+
+    @Test
+    void createIfAbsentOnlyCreatesOnce() throws IOException {
+        String key = VideoStorage.childKey(root, "lock");
+
+        assertThat(storage.createIfAbsent(key, "first")).isTrue();
+        assertThat(storage.createIfAbsent(key, "second")).isFalse();
+        assertThat(storage.readString(key)).contains("first");
+
+        storage.delete(key);
+        assertThat(storage.exists(key)).isFalse();
+    }
+}